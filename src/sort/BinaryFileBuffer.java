@@ -1,11 +1,9 @@
 package sort;
 
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.EOFException;
 import java.io.File;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.util.List;
 import java.util.PriorityQueue;
@@ -16,6 +14,7 @@ public class BinaryFileBuffer {
     public BufferedReader fbr;
     public File originalfile;
     private String cache;
+    private long value;
     private boolean empty;
 
     public BinaryFileBuffer(File f) throws IOException{
@@ -34,6 +33,7 @@ public class BinaryFileBuffer {
             }
             else{
                 empty = false;
+                value = Long.parseLong(cache);
             }
         } catch(EOFException oef){
             empty = true;
@@ -47,6 +47,10 @@ public class BinaryFileBuffer {
         if(empty()) return "";
         return cache;
     }
+    //il valore della riga corrente, letto una volta sola invece che a ogni confronto
+    public long peekValue() {
+        return value;
+    }
     public String pop() throws IOException{
         String answer = peek();
         reload();
@@ -56,33 +60,23 @@ public class BinaryFileBuffer {
     public static int mergeSortedFiles(List<File> files, String outputfile) throws IOException {
         //questo è il metodo che fa la fusione che mi rallenta tutto
         PriorityQueue<BinaryFileBuffer> pq = new PriorityQueue<>(11,
-                (BinaryFileBuffer i, BinaryFileBuffer j) -> {
-                    if(i.peek().length()<j.peek().length())
-                        return -1;
-                    else if(i.peek().length()>j.peek().length())
-                        return 1;
-                    else if(Long.valueOf(i.peek())>Long.valueOf(j.peek()))
-                        return 1;
-                    else if(Long.valueOf(i.peek())<Long.valueOf(j.peek()))
-                        return -1;
-                    return 0;
-                });
-        long size = 0;
+                (BinaryFileBuffer i, BinaryFileBuffer j) -> Long.compare(i.peekValue(), j.peekValue()));
         for (File f : files) {
             BinaryFileBuffer bfb = new BinaryFileBuffer(f);
-            pq.add(bfb);
-            size+=f.length();
+            if(bfb.empty()) {
+                bfb.close();
+                bfb.originalfile.delete();
+            } else {
+                pq.add(bfb);
+            }
         }
-        BufferedWriter fbw = new BufferedWriter(new FileWriter(outputfile));
+        SortedOutputWriter fbw = new SortedOutputWriter(outputfile);
         int rowcounter = 0;
         try {
             while(pq.size()>0) {
                 BinaryFileBuffer bfb = pq.poll();
-                String r = bfb.pop();
-                fbw.write(r);
-                if(rowcounter!=size || rowcounter == 0){
-                    fbw.newLine();
-                }
+                fbw.write(bfb.peekValue());
+                bfb.pop();
                 if(bfb.empty()) {
                     bfb.fbr.close();
                     bfb.originalfile.delete();
@@ -0,0 +1,277 @@
+package sort;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * <p>Sorts a file with a one pass MSD bucket distribution instead of a k-way merge.</p>
+ * <p>One streaming pass scatters the values into {@code 2^bits} bucket files through buffered writers; since all the
+ * values of a bucket are smaller than the values of the next one, the buckets are then sorted in memory one by one,
+ * several in parallel, and written out in order with no merge. The bucket boundaries are the quantiles of a sample of
+ * the input, so skewed data still gives buckets of about the same size. A bucket bigger than the memory budget is split
+ * again in the same way; if splitting does not make it smaller (e.g. one value repeated everywhere) it is sorted with
+ * runs in a {@link SpillArena}.</p>
+ */
+public class BucketSort {
+    public static final int DEFAULT_BITS = 8;
+    public static final int SAMPLE_SIZE = 10000;
+    public static final int SAMPLES_PER_BUCKET = 64;
+    public static final int MAX_BITS = 12;
+    private static final int MAX_DEPTH = 4;
+    private static final int MIN_BUCKET_BUFFER = 1024;
+    private static final int MAX_BUCKET_BUFFER = 32 * 1024;
+
+    private final int bits;
+    private final long budget;
+    private final int threads;
+    private final int bucketBuffer;
+
+    public BucketSort(int bits, long budget, int threads) {
+        if(bits < 1 || bits > MAX_BITS)
+            throw new IllegalArgumentException("Bucket bits must be between 1 and " + MAX_BITS + ": " + bits);
+        if(budget < 8 || threads < 1)
+            throw new IllegalArgumentException("Invalid budget " + budget + " or threads " + threads);
+        this.bits = bits;
+        this.budget = budget;
+        this.threads = threads;
+        //i 2^bits writer aperti insieme non devono superare un ottavo del budget
+        bucketBuffer = (int)Math.max(MIN_BUCKET_BUFFER, Math.min(MAX_BUCKET_BUFFER, budget >> (bits + 3)));
+    }
+
+    /**
+     * Usage: {@code BucketSort <input> <output> [<bits>]}.
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length < 2) {
+            System.err.println("Usage: BucketSort <input> <output> [<bits>]");
+            System.exit(1);
+        }
+        long start = System.currentTimeMillis();
+        int bits = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_BITS;
+        BucketSort sorter = new BucketSort(bits, Long.getLong(Sort.MEMORY_PROPERTY, Sort.memoryBudget()), Runtime.getRuntime().availableProcessors());
+        SortStatistics statistics = SortStatistics.fromProperties();
+        long rows = sorter.sort(new File(args[0]), args[1], Integer.getInteger(Sort.INDEX_PROPERTY, 0), statistics);
+        statistics.write(args[1]);
+        Utils.printLine(Utils.Messages.BUCKET_SORT_END, rows, 1 << bits);
+        Utils.printLine(Utils.Messages.ELAPSED_TIME, (System.currentTimeMillis() - start) / 1000);
+    }
+
+    /**
+     * Sorts {@code input} into {@code outputfile} and returns the number of rows.
+     */
+    public long sort(File input, String outputfile, int indexEvery) throws IOException {
+        return sort(input, outputfile, indexEvery, null);
+    }
+
+    /**
+     * As {@link #sort(File, String, int)}, also collecting {@code statistics} when it is not {@code null}.
+     */
+    public long sort(File input, String outputfile, int indexEvery, SortStatistics statistics) throws IOException {
+        if(!input.isFile())
+            throw new IOException("File not exist: " + input);
+        long[] splitters = DistributedSort.chooseSplitters(input, 1 << bits, sampleSize());
+        try(SortedOutputWriter out = new SortedOutputWriter(outputfile, indexEvery)) {
+            out.setStatistics(statistics);
+            List<Bucket> buckets;
+            try(NumberReader reader = new NumberReader(input)) {
+                buckets = scatter(reader::hasNext, () -> {
+                    long value = reader.next();
+                    if(statistics != null)
+                        statistics.accept(value);
+                    return value;
+                }, splitters);
+            }
+            sortBuckets(buckets, out, 0);
+            return out.rows();
+        }
+    }
+
+    private interface HasNext {
+        boolean test() throws IOException;
+    }
+
+    private interface Next {
+        long get() throws IOException;
+    }
+
+    private static class Bucket {
+        private final File file;
+        private long count;
+
+        Bucket(File file) {
+            this.file = file;
+        }
+    }
+
+    /**
+     * Writes every value in the bucket of its key range, in binary form.
+     */
+    private List<Bucket> scatter(HasNext hasNext, Next next, long[] splitters) throws IOException {
+        List<Bucket> buckets = new ArrayList<>();
+        DataOutputStream[] outs = new DataOutputStream[splitters.length + 1];
+        try {
+            for(int i = 0; i < outs.length; i++) {
+                File f = File.createTempFile("bucketSort", "bucket");
+                buckets.add(new Bucket(f));
+                outs[i] = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f), bucketBuffer));
+            }
+            while(hasNext.test()) {
+                long value = next.get();
+                int b = DistributedSort.owner(splitters, value);
+                outs[b].writeLong(value);
+                buckets.get(b).count++;
+            }
+        } catch(IOException e) {
+            for(Bucket b : buckets) b.file.delete();
+            throw e;
+        } finally {
+            for(DataOutputStream out : outs)
+                if(out != null) out.close();
+        }
+        return buckets;
+    }
+
+    private void sortBuckets(List<Bucket> buckets, SortedOutputWriter out, int depth) throws IOException {
+        //ogni thread tiene in memoria un bucket: il budget e' diviso tra i thread
+        long maxValues = Math.min(budget / 8 / threads, Integer.MAX_VALUE - 8);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        Deque<Future<long[]>> window = new ArrayDeque<>();
+        try {
+            for(Bucket b : buckets) {
+                if(b.count <= maxValues) {
+                    window.add(pool.submit(() -> load(b)));
+                    if(window.size() >= threads)
+                        write(window.poll(), out);
+                } else {
+                    //i bucket precedenti vanno scritti prima di dividere questo
+                    while(!window.isEmpty())
+                        write(window.poll(), out);
+                    split(b, out, depth, maxValues);
+                }
+            }
+            while(!window.isEmpty())
+                write(window.poll(), out);
+        } finally {
+            pool.shutdownNow();
+            for(Bucket b : buckets) b.file.delete();
+        }
+    }
+
+    private static long[] load(Bucket b) throws IOException {
+        long[] list = new long[(int)b.count];
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(b.file), NumberReader.BUFFERSIZE))) {
+            for(int i = 0; i < list.length; i++)
+                list[i] = in.readLong();
+        }
+        b.file.delete();
+        Arrays.sort(list);
+        return list;
+    }
+
+    private static void write(Future<long[]> bucket, SortedOutputWriter out) throws IOException {
+        long[] list;
+        try {
+            list = bucket.get();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while sorting buckets", e);
+        } catch(ExecutionException e) {
+            if(e.getCause() instanceof IOException)
+                throw (IOException)e.getCause();
+            throw new IOException(e.getCause());
+        }
+        for(long v : list)
+            out.write(v);
+    }
+
+    /**
+     * Splits a bucket bigger than the budget into smaller buckets, or sorts it with a spill arena
+     * when splitting would not reduce it.
+     */
+    private void split(Bucket b, SortedOutputWriter out, int depth, long maxValues) throws IOException {
+        long[] splitters = depth < MAX_DEPTH ? sampleSplitters(b) : new long[0];
+        //nessun progresso se tutti i separatori sono uguali (un solo valore ripetuto nel campione)
+        if(splitters.length == 0 || splitters[0] == splitters[splitters.length - 1]) {
+            sortWithArena(b, out, (int)maxValues);
+            return;
+        }
+        List<Bucket> buckets;
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(b.file), NumberReader.BUFFERSIZE))) {
+            long[] left = {b.count};
+            buckets = scatter(() -> left[0] > 0, () -> {
+                left[0]--;
+                return in.readLong();
+            }, splitters);
+        }
+        b.file.delete();
+        sortBuckets(buckets, out, depth + 1);
+    }
+
+    /**
+     * Samples for {@code 2^bits} buckets: {@value #SAMPLES_PER_BUCKET} for each bucket, at least {@value #SAMPLE_SIZE}.
+     */
+    private int sampleSize() {
+        return Math.max(SAMPLE_SIZE, SAMPLES_PER_BUCKET << bits);
+    }
+
+    private long[] sampleSplitters(Bucket b) throws IOException {
+        int n = (int)Math.min(sampleSize(), b.count);
+        long[] sample = new long[n];
+        Random random = new Random();
+        long[] offsets = new long[n];
+        for(int i = 0; i < n; i++)
+            offsets[i] = 8 * (long)(random.nextDouble() * b.count);
+        //offset ordinati: le letture vanno avanti nel file
+        Arrays.sort(offsets);
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        try(FileChannel channel = new FileInputStream(b.file).getChannel()) {
+            for(int i = 0; i < n; i++) {
+                buffer.clear();
+                while(buffer.hasRemaining())
+                    if(channel.read(buffer, offsets[i] + buffer.position()) < 0)
+                        throw new IOException("Bucket truncated at " + offsets[i]);
+                sample[i] = buffer.getLong(0);
+            }
+        }
+        return DistributedSort.quantiles(sample, n, 1 << bits);
+    }
+
+    private static void sortWithArena(Bucket b, SortedOutputWriter out, int maxValues) throws IOException {
+        try(SpillArena arena = new SpillArena(b.file.length());
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(b.file), NumberReader.BUFFERSIZE))) {
+            List<SpillArena.Segment> runs = new ArrayList<>();
+            long[] list = new long[(int)Math.min(b.count, Math.max(1, maxValues))];
+            long left = b.count;
+            while(left > 0) {
+                int n = (int)Math.min(left, list.length);
+                for(int i = 0; i < n; i++)
+                    list[i] = in.readLong();
+                left -= n;
+                Arrays.sort(list, 0, n);
+                runs.add(arena.write(list, n));
+            }
+            list = null;
+            arena.merge(runs, out);
+        } finally {
+            b.file.delete();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package sort;
+
+/**
+ * <p>Conversion between ASCII ten base digits and {@code long} working on 8 bytes at a time inside a {@code long}
+ * (SWAR, SIMD within a register) instead of one byte at a time.</p>
+ * <p>Words are read in little endian order, so the first character of the text is the lowest byte of the word.</p>
+ */
+public final class Digits {
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGHS = 0x8080808080808080L;
+    private static final long NEWLINES = ONES * '\n';
+    private static final long[] POWERS = {1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L};
+    /* Le due cifre di ogni numero da 0 a 99, usate per scrivere due cifre alla volta */
+    private static final byte[] PAIRS = new byte[200];
+
+    static {
+        for(int i = 0; i < 100; i++) {
+            PAIRS[2 * i] = (byte)('0' + i / 10);
+            PAIRS[2 * i + 1] = (byte)('0' + i % 10);
+        }
+    }
+
+    private Digits() {
+    }
+
+    /**
+     * Returns how many of the bytes of {@code word}, starting from the lowest, are digits before the first non digit (0 to 8).
+     */
+    public static int digitCount(long word) {
+        //per ogni byte cifra sia b che b+6 hanno 3 come nibble alto: lo xor da' 0 solo sulle cifre
+        long t = ((word & 0xF0F0F0F0F0F0F0F0L) | (((word + 0x0606060606060606L) & 0xF0F0F0F0F0F0F0F0L) >>> 4)) ^ 0x3333333333333333L;
+        return Long.numberOfTrailingZeros(t) >>> 3;
+    }
+
+    /**
+     * Returns the value of the first {@code count} (1 to 8) digits of {@code word}.
+     */
+    public static long parse(long word, int count) {
+        long v = (word & 0x0F0F0F0F0F0F0F0FL) << (8 * (8 - count));
+        v = (v * 10) + (v >>> 8);
+        return (((v & 0x000000FF000000FFL) * (100 + (1000000L << 32)))
+                + (((v >>> 16) & 0x000000FF000000FFL) * (1 + (10000L << 32)))) >>> 32;
+    }
+
+    /**
+     * Returns {@code 10^count} for {@code count} from 0 to 8.
+     */
+    public static long power(int count) {
+        return POWERS[count];
+    }
+
+    /**
+     * Returns the index of the first {@code '\n'} in {@code buf[from, to)}, or {@code to} if there is none.
+     */
+    public static int indexOfNewline(byte[] buf, int from, int to) {
+        int i = from;
+        for(; i + 8 <= to; i += 8) {
+            long x = word(buf, i) ^ NEWLINES;
+            long found = (x - ONES) & ~x & HIGHS;
+            if(found != 0)
+                return i + (Long.numberOfTrailingZeros(found) >>> 3);
+        }
+        while(i < to && buf[i] != '\n') i++;
+        return i;
+    }
+
+    /**
+     * Reads 8 bytes of {@code buf} starting at {@code i} as a little endian word.
+     */
+    public static long word(byte[] buf, int i) {
+        return (buf[i] & 0xFFL)
+                | (buf[i + 1] & 0xFFL) << 8
+                | (buf[i + 2] & 0xFFL) << 16
+                | (buf[i + 3] & 0xFFL) << 24
+                | (buf[i + 4] & 0xFFL) << 32
+                | (buf[i + 5] & 0xFFL) << 40
+                | (buf[i + 6] & 0xFFL) << 48
+                | (buf[i + 7] & 0xFFL) << 56;
+    }
+
+    /**
+     * Returns the number of characters of the ten base representation of {@code value}.
+     */
+    public static int length(long value) {
+        if(value < 0)
+            return value == Long.MIN_VALUE ? 20 : 1 + length(-value);
+        int n = 1;
+        long p = 10;
+        while(n < 19 && value >= p) {
+            p *= 10;
+            n++;
+        }
+        return n;
+    }
+
+    /**
+     * Writes the ten base representation of {@code value} in {@code dst} starting at {@code pos}
+     * and returns the position after the last character.
+     */
+    public static int format(long value, byte[] dst, int pos) {
+        if(value == Long.MIN_VALUE) {
+            byte[] min = Long.toString(value).getBytes();
+            System.arraycopy(min, 0, dst, pos, min.length);
+            return pos + min.length;
+        }
+        if(value < 0) {
+            dst[pos++] = '-';
+            value = -value;
+        }
+        int end = pos + length(value);
+        int i = end;
+        while(value >= 100) {
+            int r = (int)(value % 100);
+            value /= 100;
+            dst[--i] = PAIRS[2 * r + 1];
+            dst[--i] = PAIRS[2 * r];
+        }
+        if(value >= 10) {
+            dst[--i] = PAIRS[2 * (int)value + 1];
+            dst[--i] = PAIRS[2 * (int)value];
+        } else {
+            dst[--i] = (byte)('0' + value);
+        }
+        return end;
+    }
+}
@@ -0,0 +1,374 @@
+package sort;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * <p>Sorts a file with several worker processes coordinated by a local coordinator.</p>
+ * <p>The coordinator samples the input to choose the key-range splitters, then starts one JVM for each worker and gives it
+ * a byte range of the input. Every worker sends each value of its range to the worker owning the value's key range,
+ * sorts the binary values it receives in blocks kept as runs of a {@link SpillArena}, with no text on the way, and
+ * merges them into a sorted part. Parts are ordered by key range, so the coordinator only concatenates them.</p>
+ * <p>Workers exchange their {@code host:port} addresses through the coordinator, so the same protocol works when the
+ * workers are bound to a non-loopback address (system property {@value #HOST_PROPERTY}). Connecting to a peer, waiting
+ * for the peers to connect and reading from them all give up after {@value #TIMEOUT_PROPERTY} milliseconds (default
+ * {@value #DEFAULT_TIMEOUT}), so a worker dying during the shuffle makes the others fail instead of waiting forever.</p>
+ */
+public class DistributedSort {
+    public static final String HOST_PROPERTY = "sort.distributed.host";
+    public static final String TIMEOUT_PROPERTY = "sort.distributed.timeout";
+    public static final int DEFAULT_TIMEOUT = 60000;
+    public static final int SAMPLE_SIZE = 10000;
+    private static final String WORKER = "worker";
+    private static final String DONE = "DONE";
+
+    public static void main(String[] args) throws Exception {
+        if(args.length > 0 && WORKER.equals(args[0])) {
+            worker(args);
+            return;
+        }
+        long start = System.currentTimeMillis();
+        String inputfile;
+        String outputfile = "result.txt";
+        int workers;
+        int maxTemp;
+        if(args.length >= 3) {
+            inputfile = args[0];
+            outputfile = args[1];
+            workers = Integer.parseInt(args[2]);
+            maxTemp = args.length > 3 ? Integer.parseInt(args[3]) : Sort.MAX_TEMP;
+        } else {
+            inputfile = Utils.readLine("Insert file name,"
+                    + " with path if different from root app");
+            workers = Utils.readNumber("Insert number of workers");
+            maxTemp = Utils.readNumber("Insert max number of slice for each worker");
+        }
+        long rows = coordinate(new File(inputfile), outputfile, workers, maxTemp);
+        Utils.printLine(Utils.Messages.DISTRIBUTED_END, rows, workers);
+        Utils.printLine(Utils.Messages.ELAPSED_TIME, (System.currentTimeMillis() - start) / 1000);
+        System.out.println("Result in root app: " + outputfile);
+    }
+
+    /**
+     * Runs the coordinator: starts {@code workers} worker processes, waits for them and concatenates their parts
+     * into {@code outputfile}. Returns the number of sorted rows.
+     */
+    public static long coordinate(File input, String outputfile, int workers, int maxTemp) throws IOException, InterruptedException {
+        if(!input.isFile())
+            throw new IOException("File not exist: " + input);
+        if(workers < 1)
+            throw new IllegalArgumentException("Number of workers must be positive: " + workers);
+        long[] splitters = chooseSplitters(input, workers);
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        long length = input.length();
+        List<Process> processes = new ArrayList<>();
+        List<File> parts = new ArrayList<>();
+        try {
+            for(int i = 0; i < workers; i++) {
+                File part = File.createTempFile("distributedSort", "part");
+                part.deleteOnExit();
+                parts.add(part);
+                List<String> command = new ArrayList<>(Arrays.asList(java, "-cp", System.getProperty("java.class.path")));
+                //le impostazioni del coordinatore valgono anche per i worker
+                for(String property : new String[]{HOST_PROPERTY, TIMEOUT_PROPERTY, Sort.MEMORY_PROPERTY})
+                    if(System.getProperty(property) != null)
+                        command.add("-D" + property + "=" + System.getProperty(property));
+                command.addAll(Arrays.asList(DistributedSort.class.getName(), WORKER,
+                        input.getAbsolutePath(),
+                        String.valueOf(length * i / workers),
+                        String.valueOf(length * (i + 1) / workers),
+                        join(splitters),
+                        part.getAbsolutePath(),
+                        String.valueOf(maxTemp)));
+                ProcessBuilder pb = new ProcessBuilder(command);
+                pb.redirectError(ProcessBuilder.Redirect.INHERIT);
+                processes.add(pb.start());
+            }
+            //ogni worker comunica l'indirizzo su cui riceve, poi riceve la lista completa
+            String[] addresses = new String[workers];
+            List<BufferedReader> outputs = new ArrayList<>();
+            for(int i = 0; i < workers; i++) {
+                BufferedReader out = new BufferedReader(new InputStreamReader(processes.get(i).getInputStream()));
+                outputs.add(out);
+                addresses[i] = out.readLine();
+                if(addresses[i] == null)
+                    throw new IOException("Worker " + i + " terminated before start");
+            }
+            String peers = String.join(",", addresses);
+            for(Process p : processes) {
+                Writer w = new OutputStreamWriter(p.getOutputStream());
+                w.write(peers + "\n");
+                w.flush();
+            }
+            long rows = 0;
+            for(int i = 0; i < workers; i++) {
+                String line = outputs.get(i).readLine();
+                if(processes.get(i).waitFor() != 0 || line == null || !line.startsWith(DONE))
+                    throw new IOException("Worker " + i + " failed");
+                rows += Long.parseLong(line.substring(DONE.length()).trim());
+            }
+            concatenate(parts, outputfile);
+            return rows;
+        } finally {
+            for(Process p : processes) p.destroy();
+            for(File part : parts) part.delete();
+        }
+    }
+
+    /**
+     * Chooses {@code workers - 1} splitters from a random sample of the lines of the file,
+     * so that each key range receives about the same number of values.
+     */
+    public static long[] chooseSplitters(File input, int workers) throws IOException {
+        return chooseSplitters(input, workers, SAMPLE_SIZE);
+    }
+
+    /**
+     * As {@link #chooseSplitters(File, int)}, with {@code samples} sampled lines: the sample has to grow with the number
+     * of ranges, or the splitters of many small ranges are mostly noise.
+     */
+    public static long[] chooseSplitters(File input, int parts, int samples) throws IOException {
+        long[] sample = new long[samples];
+        int n = 0;
+        Random random = new Random();
+        try(FileChannel channel = new FileInputStream(input).getChannel()) {
+            long length = channel.size();
+            if(length == 0)
+                return quantiles(sample, 0, parts);
+            //offset ordinati: le letture vanno avanti nel file invece di saltare avanti e indietro
+            long[] offsets = new long[samples];
+            for(int i = 0; i < samples; i++)
+                offsets[i] = (long)(random.nextDouble() * length);
+            Arrays.sort(offsets);
+            //basta per il resto della riga e un numero intero (20 caratteri e il fine riga)
+            ByteBuffer buffer = ByteBuffer.allocate(64);
+            byte[] b = buffer.array();
+            for(long offset : offsets) {
+                buffer.clear();
+                while(buffer.hasRemaining() && channel.read(buffer, offset + buffer.position()) > 0);
+                int len = buffer.position();
+                //come prima: si salta il resto della riga in cui cade l'offset e si legge la successiva
+                int from = 0;
+                if(offset > 0) {
+                    from = Digits.indexOfNewline(b, 0, len) + 1;
+                    if(from > len)
+                        continue;
+                }
+                int to = Digits.indexOfNewline(b, from, len);
+                if(to == len && offset + len < length)
+                    continue;
+                String line = new String(b, from, to - from).trim();
+                if(!line.isEmpty())
+                    sample[n++] = Long.parseLong(line);
+            }
+        }
+        return quantiles(sample, n, parts);
+    }
+
+    /**
+     * Sorts the first {@code n} values of {@code sample} and returns the {@code parts - 1} values splitting it in
+     * {@code parts} ranges of the same size; an empty array if the sample is empty.
+     */
+    static long[] quantiles(long[] sample, int n, int parts) {
+        if(n == 0)
+            return new long[0];
+        Arrays.sort(sample, 0, n);
+        long[] splitters = new long[parts - 1];
+        for(int i = 1; i < parts; i++)
+            splitters[i - 1] = sample[(int)((long)n * i / parts)];
+        return splitters;
+    }
+
+    /**
+     * Returns the index of the key range owning {@code value}: the first splitter greater than the value.
+     */
+    static int owner(long[] splitters, long value) {
+        int l = 0;
+        int h = splitters.length;
+        while(l < h) {
+            int m = (l + h) >>> 1;
+            if(value < splitters[m])
+                h = m;
+            else
+                l = m + 1;
+        }
+        return l;
+    }
+
+    private static void worker(String[] args) throws IOException, InterruptedException {
+        File input = new File(args[1]);
+        long start = Long.parseLong(args[2]);
+        long end = Long.parseLong(args[3]);
+        long[] splitters = split(args[4]);
+        File part = new File(args[5]);
+        int maxTemp = Integer.parseInt(args[6]);
+
+        String host = System.getProperty(HOST_PROPERTY, InetAddress.getLoopbackAddress().getHostAddress());
+        try(ServerSocket server = new ServerSocket(0, 50, InetAddress.getByName(host))) {
+            System.out.println(host + ":" + server.getLocalPort());
+            System.out.flush();
+            String peerList = new BufferedReader(new InputStreamReader(System.in)).readLine();
+            if(peerList == null)
+                throw new IOException("Coordinator closed before sending the peer list");
+            String[] peers = peerList.split(",");
+
+            //un thread riceve da ciascun worker (compreso se stesso) e ordina i blocchi ricevuti come run della SpillArena
+            long budget = Long.getLong(Sort.MEMORY_PROPERTY, Sort.memoryBudget());
+            long perReceiver = Math.min(budget / 8, (end - start) / 12 / maxTemp) / peers.length;
+            int block = (int)Math.max(1024, Math.min(perReceiver, Integer.MAX_VALUE - 8));
+            int timeout = Integer.getInteger(TIMEOUT_PROPERTY, DEFAULT_TIMEOUT);
+            try(SpillArena arena = new SpillArena(end - start)) {
+                Receiver[] receivers = new Receiver[peers.length];
+                server.setSoTimeout(timeout);
+                Thread acceptor = new Thread(() -> {
+                    try {
+                        for(int i = 0; i < receivers.length; i++) {
+                            Socket socket = server.accept();
+                            socket.setSoTimeout(timeout);
+                            receivers[i] = new Receiver(socket, arena, block);
+                            receivers[i].start();
+                        }
+                    } catch(IOException e) {
+                        System.err.println("Shuffle error: " + e.getMessage());
+                    }
+                });
+                //un peer morto non deve tenere in vita il worker
+                acceptor.setDaemon(true);
+                acceptor.start();
+
+                DataOutputStream[] outs = new DataOutputStream[peers.length];
+                try {
+                    for(int i = 0; i < peers.length; i++) {
+                        int colon = peers[i].lastIndexOf(':');
+                        Socket s = new Socket();
+                        s.connect(new InetSocketAddress(peers[i].substring(0, colon), Integer.parseInt(peers[i].substring(colon + 1))), timeout);
+                        outs[i] = new DataOutputStream(new BufferedOutputStream(s.getOutputStream(), NumberReader.BUFFERSIZE));
+                    }
+                    try(NumberReader reader = new NumberReader(input, start, end)) {
+                        while(reader.hasNext()) {
+                            long value = reader.next();
+                            outs[owner(splitters, value)].writeLong(value);
+                        }
+                    }
+                } finally {
+                    for(DataOutputStream out : outs)
+                        if(out != null) out.close();
+                }
+
+                acceptor.join();
+                List<SpillArena.Segment> runs = new ArrayList<>();
+                for(Receiver r : receivers) {
+                    if(r == null)
+                        throw new IOException("Missing connection from a peer");
+                    r.join();
+                    if(r.error != null)
+                        throw r.error;
+                    runs.addAll(r.runs);
+                }
+                long rows;
+                try(SortedOutputWriter fbw = new SortedOutputWriter(part.getPath())) {
+                    rows = arena.merge(runs, fbw);
+                }
+                System.out.println(DONE + " " + rows);
+                System.out.flush();
+            }
+        }
+    }
+
+    private static class Receiver extends Thread {
+        private final Socket socket;
+        private final SpillArena arena;
+        private final int block;
+        private final List<SpillArena.Segment> runs = new ArrayList<>();
+        private IOException error;
+
+        Receiver(Socket socket, SpillArena arena, int block) {
+            this.socket = socket;
+            this.arena = arena;
+            this.block = block;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try(DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), NumberReader.BUFFERSIZE))) {
+                long[] list = new long[block];
+                int dim = 0;
+                while(true) {
+                    long value;
+                    try {
+                        value = in.readLong();
+                    } catch(EOFException eof) {
+                        break;
+                    }
+                    list[dim++] = value;
+                    if(dim == list.length) {
+                        Arrays.sort(list);
+                        runs.add(arena.write(list, dim));
+                        dim = 0;
+                    }
+                }
+                if(dim > 0) {
+                    Arrays.sort(list, 0, dim);
+                    runs.add(arena.write(list, dim));
+                }
+            } catch(IOException e) {
+                error = e;
+            }
+        }
+    }
+
+    private static void concatenate(List<File> files, String outputfile) throws IOException {
+        try(FileChannel out = new FileOutputStream(outputfile).getChannel()) {
+            for(File f : files) {
+                try(FileChannel in = new FileInputStream(f).getChannel()) {
+                    long size = in.size();
+                    long done = 0;
+                    while(done < size)
+                        done += in.transferTo(done, size - done, out);
+                }
+            }
+        }
+    }
+
+    private static String join(long[] values) {
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0; i < values.length; i++) {
+            if(i > 0) sb.append(',');
+            sb.append(values[i]);
+        }
+        //un argomento vuoto verrebbe perso da alcune shell, uso un segnaposto
+        return sb.length() == 0 ? "-" : sb.toString();
+    }
+
+    private static long[] split(String values) {
+        if("-".equals(values))
+            return new long[0];
+        String[] parts = values.split(",");
+        long[] result = new long[parts.length];
+        for(int i = 0; i < parts.length; i++)
+            result[i] = Long.parseLong(parts[i]);
+        return result;
+    }
+}
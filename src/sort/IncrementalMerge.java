@@ -0,0 +1,163 @@
+package sort;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>Folds new unsorted numbers (deltas) into an already sorted file with a single sequential pass.</p>
+ * <p>All the pending deltas are loaded and sorted together in memory, then merged with the sorted file in a two-way
+ * merge. The sorted file is never sorted again, so the cost of an update is one read of the sorted file and one write
+ * of the result. Values already in the sorted file come before equal values of the deltas.</p>
+ * <p>The sidecar files of the sorted file are kept in step: its {@link SortedOutputWriter#INDEX_SUFFIX} index and its
+ * {@link SortStatistics#STATS_SUFFIX} report are written again from the merged stream. A report whose row count cannot
+ * be read is deleted instead, since its quantiles would no longer match the data.</p>
+ */
+public class IncrementalMerge {
+
+    /**
+     * Usage: {@code IncrementalMerge <sorted file> <delta file> [<delta file> ...]}. The sorted file is replaced by the result.
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length < 2) {
+            System.err.println("Usage: IncrementalMerge <sorted file> <delta file> [<delta file> ...]");
+            System.exit(1);
+        }
+        long start = System.currentTimeMillis();
+        File sorted = new File(args[0]);
+        File[] deltas = new File[args.length - 1];
+        for(int i = 1; i < args.length; i++)
+            deltas[i - 1] = new File(args[i]);
+        long rows = update(sorted, Arrays.asList(deltas));
+        Utils.printLine(Utils.Messages.INCREMENTAL_END, deltas.length, rows);
+        Utils.printLine(Utils.Messages.ELAPSED_TIME, (System.currentTimeMillis() - start) / 1000);
+    }
+
+    /**
+     * Merges {@code deltas} into {@code sorted}, replacing it only once the new result has been completely written.
+     * Returns the number of rows of the new sorted file.
+     */
+    public static long update(File sorted, List<File> deltas) throws IOException {
+        File dir = sorted.getAbsoluteFile().getParentFile();
+        File index = new File(sorted.getPath() + SortedOutputWriter.INDEX_SUFFIX);
+        File stats = new File(sorted.getPath() + SortStatistics.STATS_SUFFIX);
+        int indexEvery = Integer.getInteger(Sort.INDEX_PROPERTY, 0);
+        //l'indice esistente va rigenerato: senza proprieta' i blocchi sono limitati solo dai byte
+        if(indexEvery <= 0 && index.isFile())
+            indexEvery = Integer.MAX_VALUE;
+        long previousRows = stats.isFile() ? statisticsCount(stats) : -1;
+        SortStatistics statistics = null;
+        if(previousRows >= 0)
+            statistics = SortStatistics.fromProperties();
+        else if(stats.isFile() && !stats.delete())
+            throw new IOException("Cannot delete stale statistics: " + stats);
+        File newtmpfile = File.createTempFile("incrementalMerge", "flatFile", dir);
+        File newtmpindex = new File(newtmpfile.getPath() + SortedOutputWriter.INDEX_SUFFIX);
+        try {
+            long rows = merge(sorted, deltas, newtmpfile.getPath(), indexEvery, statistics, previousRows);
+            Files.move(newtmpfile.toPath(), sorted.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            if(indexEvery > 0)
+                Files.move(newtmpindex.toPath(), index.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            if(statistics != null) {
+                if(statistics.count() == rows)
+                    statistics.write(sorted.getPath());
+                else
+                    stats.delete();
+            }
+            return rows;
+        } finally {
+            newtmpfile.delete();
+            newtmpindex.delete();
+        }
+    }
+
+    /**
+     * Writes to {@code outputfile} the rows of {@code sorted} merged with the rows of every delta file.
+     * Returns the number of rows written.
+     */
+    public static long merge(File sorted, List<File> deltas, String outputfile) throws IOException {
+        return merge(sorted, deltas, outputfile, 0, null, -1);
+    }
+
+    /**
+     * As {@link #merge(File, List, String)}, also writing the sparse index when {@code indexEvery} is positive and
+     * collecting {@code statistics} when it is not {@code null}. The quantiles need the final number of rows before the
+     * first one is written: it is {@code sortedRows}, the rows of {@code sorted}, plus the rows of the deltas.
+     */
+    public static long merge(File sorted, List<File> deltas, String outputfile, int indexEvery,
+                             SortStatistics statistics, long sortedRows) throws IOException {
+        long[] delta = loadSorted(deltas);
+        int d = 0;
+        if(statistics != null)
+            statistics.expectCount(sortedRows + delta.length);
+        try(NumberReader base = new NumberReader(sorted);
+            SortedOutputWriter out = new SortedOutputWriter(outputfile, indexEvery)) {
+            out.setStatistics(statistics);
+            while(base.hasNext()) {
+                long value = base.next();
+                while(d < delta.length && delta[d] < value)
+                    write(delta[d++], out, statistics);
+                write(value, out, statistics);
+            }
+            while(d < delta.length)
+                write(delta[d++], out, statistics);
+            return out.rows();
+        }
+    }
+
+    private static void write(long value, SortedOutputWriter out, SortStatistics statistics) throws IOException {
+        if(statistics != null)
+            statistics.accept(value);
+        out.write(value);
+    }
+
+    /**
+     * Returns the {@code count} of a {@link SortStatistics} report, or -1 if it cannot be read.
+     */
+    static long statisticsCount(File stats) throws IOException {
+        try(BufferedReader br = new BufferedReader(new FileReader(stats))) {
+            String line;
+            while((line = br.readLine()) != null) {
+                if(line.startsWith("count="))
+                    return Long.parseLong(line.substring("count=".length()));
+            }
+        } catch(NumberFormatException e) {
+            return -1;
+        }
+        return -1;
+    }
+
+    /**
+     * Loads every number of the delta files in a single array and sorts it.
+     */
+    static long[] loadSorted(List<File> deltas) throws IOException {
+        long size = 0;
+        for(File f : deltas) {
+            if(!f.isFile())
+                throw new IOException("File not exist: " + f);
+            size += f.length();
+        }
+        //stima iniziale: circa 11 byte per riga (10 cifre e il fine riga), poi l'array cresce se serve
+        long[] list = new long[(int)Math.min(Integer.MAX_VALUE - 8, Math.max(16, size / 11))];
+        int dim = 0;
+        for(File f : deltas) {
+            try(NumberReader reader = new NumberReader(f)) {
+                while(reader.hasNext()) {
+                    if(dim == list.length)
+                        list = Arrays.copyOf(list, (int)Math.min(Integer.MAX_VALUE - 8, list.length * 2L));
+                    list[dim++] = reader.next();
+                }
+            }
+        }
+        list = Arrays.copyOf(list, dim);
+        //Arrays.sort e non Sort.QuickSort: i delta giornalieri sono spesso gia' quasi ordinati
+        //e il pivot sull'ultimo elemento diventerebbe quadratico
+        Arrays.sort(list);
+        return list;
+    }
+}
@@ -0,0 +1,107 @@
+package sort;
+
+/**
+ * <p>Extracts the numeric sort key of a record (one line of the input file).</p>
+ * <p>The key is either a column of a delimited record ({@link #column(char, int, boolean)}) or a fixed slice
+ * of the record ({@link #fixed(int, int, boolean)}), and it is parsed as a signed or unsigned 64-bit ten base number.
+ * The returned keys are already mapped so that a signed {@code long} comparison gives the right order also for
+ * unsigned keys.</p>
+ */
+public class KeyExtractor {
+    private static final long UNSIGNED_LIMIT = Long.divideUnsigned(-1L, 10);
+
+    private final char delimiter;
+    private final int column;
+    private final int offset;
+    private final int length;
+    private final boolean unsigned;
+
+    private KeyExtractor(char delimiter, int column, int offset, int length, boolean unsigned) {
+        this.delimiter = delimiter;
+        this.column = column;
+        this.offset = offset;
+        this.length = length;
+        this.unsigned = unsigned;
+    }
+
+    /**
+     * Key in the {@code column}-th field (starting from 1) of records separated by {@code delimiter}.
+     */
+    public static KeyExtractor column(char delimiter, int column, boolean unsigned) {
+        if(column < 1)
+            throw new IllegalArgumentException("Column must start from 1: " + column);
+        return new KeyExtractor(delimiter, column, -1, -1, unsigned);
+    }
+
+    /**
+     * Key in the {@code length} bytes starting at byte {@code offset} (starting from 0) of every record.
+     */
+    public static KeyExtractor fixed(int offset, int length, boolean unsigned) {
+        if(offset < 0 || length < 1)
+            throw new IllegalArgumentException("Invalid key position: offset " + offset + ", length " + length);
+        return new KeyExtractor('\0', -1, offset, length, unsigned);
+    }
+
+    public boolean isUnsigned() {
+        return unsigned;
+    }
+
+    /**
+     * Returns the sortable key of the record stored in {@code record[from, to)}, without line terminator.
+     */
+    public long extract(byte[] record, int from, int to) {
+        int start;
+        int end;
+        if(column > 0) {
+            start = from;
+            for(int c = 1; c < column; c++) {
+                while(start < to && record[start] != delimiter) start++;
+                if(start == to)
+                    throw new NumberFormatException("Record has less than " + column + " columns");
+                start++;
+            }
+            end = start;
+            while(end < to && record[end] != delimiter) end++;
+        } else {
+            start = from + offset;
+            end = Math.min(start + length, to);
+            if(start >= to)
+                throw new NumberFormatException("Record shorter than key offset " + offset);
+        }
+        return parse(record, start, end);
+    }
+
+    private long parse(byte[] b, int start, int end) {
+        while(start < end && b[start] == ' ') start++;
+        while(end > start && b[end - 1] == ' ') end--;
+        boolean negative = false;
+        if(!unsigned && start < end && (b[start] == '-' || b[start] == '+')) {
+            negative = b[start] == '-';
+            start++;
+        }
+        if(start == end)
+            throw new NumberFormatException("Empty key");
+        long value = 0;
+        try {
+            for(int i = start; i < end; i++) {
+                int d = b[i] - '0';
+                if(d < 0 || d > 9)
+                    throw new NumberFormatException("Invalid key: " + new String(b, start, end - start));
+                if(unsigned) {
+                    //2^64-1 = 1844674407370955161 * 10 + 5
+                    if(Long.compareUnsigned(value, UNSIGNED_LIMIT) > 0 || (value == UNSIGNED_LIMIT && d > 5))
+                        throw new ArithmeticException();
+                    value = value * 10 + d;
+                } else {
+                    //accumulo in negativo per poter leggere anche Long.MIN_VALUE
+                    value = Math.subtractExact(Math.multiplyExact(value, 10), d);
+                }
+            }
+            if(unsigned)
+                return value ^ Long.MIN_VALUE;
+            return negative ? value : Math.negateExact(value);
+        } catch(ArithmeticException e) {
+            throw new NumberFormatException("Key out of range: " + new String(b, start, end - start));
+        }
+    }
+}
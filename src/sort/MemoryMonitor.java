@@ -0,0 +1,87 @@
+package sort;
+
+import java.io.Closeable;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+import javax.management.ListenerNotFoundException;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+
+/**
+ * <p>Watches heap usage through {@link MemoryMXBean} and the notifications of every {@link GarbageCollectorMXBean}.</p>
+ * <p>The usage measured right after a collection is the memory really in use: when it goes over the high threshold
+ * the heap is under pressure, when it goes back under the low threshold there is headroom again. Between the two
+ * thresholds the previous state is kept, so block sizes do not swing at every collection.</p>
+ */
+public class MemoryMonitor implements Closeable {
+    public static final double DEFAULT_HIGH = 0.75;
+    public static final double DEFAULT_LOW = 0.5;
+    /* Oltre questa soglia c'e' pressione anche senza aspettare il prossimo GC */
+    private static final double CRITICAL = 0.95;
+
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private final List<NotificationEmitter> emitters = new ArrayList<>();
+    private final NotificationListener listener = (notification, handback) -> update();
+    private final double high;
+    private final double low;
+    private volatile boolean pressure;
+
+    public MemoryMonitor() {
+        this(DEFAULT_HIGH, DEFAULT_LOW);
+    }
+
+    public MemoryMonitor(double high, double low) {
+        if(low <= 0 || low >= high || high > 1)
+            throw new IllegalArgumentException("Invalid thresholds: high " + high + ", low " + low);
+        this.high = high;
+        this.low = low;
+        for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if(gc instanceof NotificationEmitter) {
+                NotificationEmitter emitter = (NotificationEmitter)gc;
+                emitter.addNotificationListener(listener, null, null);
+                emitters.add(emitter);
+            }
+        }
+    }
+
+    /**
+     * Returns the fraction of the maximum heap currently in use.
+     */
+    public double usage() {
+        MemoryUsage heap = memory.getHeapMemoryUsage();
+        long max = heap.getMax() > 0 ? heap.getMax() : Runtime.getRuntime().maxMemory();
+        return (double)heap.getUsed() / max;
+    }
+
+    public boolean underPressure() {
+        return pressure || usage() >= CRITICAL;
+    }
+
+    public boolean hasHeadroom() {
+        return !pressure;
+    }
+
+    private void update() {
+        double used = usage();
+        if(used >= high)
+            pressure = true;
+        else if(used <= low)
+            pressure = false;
+    }
+
+    @Override
+    public void close() {
+        for(NotificationEmitter emitter : emitters) {
+            try {
+                emitter.removeNotificationListener(listener);
+            } catch(ListenerNotFoundException e) {
+                //gia' rimosso
+            }
+        }
+        emitters.clear();
+    }
+}
@@ -0,0 +1,127 @@
+package sort;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * <p>Reads one ten base number for each line directly from the bytes of a file, without creating a {@link String} for every line.</p>
+ * <p>A reader can be limited to a byte range of the file: it returns every line whose first byte is inside
+ * {@code [start, end)}, so adjacent ranges of the same file never share or lose a line.</p>
+ */
+public class NumberReader implements Closeable {
+    public static final int BUFFERSIZE = 64 * 1024;
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final long end;
+    private long position;
+
+    public NumberReader(File f) throws IOException {
+        this(f, 0, Long.MAX_VALUE);
+    }
+
+    public NumberReader(File f, long start, long end) throws IOException {
+        channel = new FileInputStream(f).getChannel();
+        buffer = ByteBuffer.allocate(BUFFERSIZE);
+        buffer.flip();
+        this.end = end;
+        position = start;
+        //se il range non inizia su una riga, la riga spezzata appartiene al range precedente
+        if(start > 0) {
+            channel.position(start - 1);
+            position = start - 1;
+            int c;
+            while((c = read()) != -1 && c != '\n');
+        } else {
+            channel.position(0);
+        }
+    }
+
+    /**
+     * Returns the offset in the file of the next byte to be read.
+     */
+    public long position() {
+        return position;
+    }
+
+    public boolean hasNext() throws IOException {
+        int c;
+        while((c = peekByte()) == '\r' || c == '\n' || c == ' ') {
+            read();
+        }
+        return c != -1 && position < end;
+    }
+
+    public long next() throws IOException {
+        if(!hasNext())
+            throw new EOFException();
+        long first = position;
+        boolean negative = false;
+        int sign = peekByte();
+        if(sign == '-' || sign == '+') {
+            negative = sign == '-';
+            read();
+        }
+        //accumulo in negativo per poter leggere anche Long.MIN_VALUE; fuori range errore come Long.valueOf
+        long value = 0;
+        int digits = 0;
+        try {
+            //8 cifre alla volta finche' il buffer ha almeno 8 byte, il resto byte per byte
+            byte[] buf = buffer.array();
+            while(buffer.remaining() >= 8) {
+                int p = buffer.position();
+                long word = Digits.word(buf, p);
+                int k = Digits.digitCount(word);
+                if(k > 0) {
+                    value = Math.subtractExact(Math.multiplyExact(value, Digits.power(k)), Digits.parse(word, k));
+                    digits += k;
+                    buffer.position(p + k);
+                    position += k;
+                }
+                if(k < 8)
+                    break;
+            }
+            int c;
+            while((c = read()) != -1 && c != '\n' && c != '\r') {
+                if(c < '0' || c > '9')
+                    throw new NumberFormatException("Invalid digit '" + (char)c + "' at byte " + (position - 1));
+                value = Math.subtractExact(Math.multiplyExact(value, 10), c - '0');
+                digits++;
+            }
+            if(digits == 0)
+                throw new NumberFormatException("Empty number at byte " + position);
+            return negative ? value : Math.negateExact(value);
+        } catch(ArithmeticException e) {
+            throw new NumberFormatException("Number out of range at byte " + first);
+        }
+    }
+
+    private int peekByte() throws IOException {
+        if(!buffer.hasRemaining() && !fill())
+            return -1;
+        return buffer.get(buffer.position()) & 0xFF;
+    }
+
+    private int read() throws IOException {
+        if(!buffer.hasRemaining() && !fill())
+            return -1;
+        position++;
+        return buffer.get() & 0xFF;
+    }
+
+    private boolean fill() throws IOException {
+        buffer.clear();
+        int n = channel.read(buffer);
+        buffer.flip();
+        return n > 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
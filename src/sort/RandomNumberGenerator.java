@@ -179,8 +179,9 @@ public final class RandomNumberGenerator
 
 		long writtenBytes = 0; // Number of bytes already written to the output
 		int lastProgress = 0; // Last progress indicator on a scale from 0 to 100
-		Long maxValue = null; // The maximum value generated
-		Long minValue = null; // The minimum value generated
+		long maxValue = Long.MIN_VALUE; // The maximum value generated
+		long minValue = Long.MAX_VALUE; // The minimum value generated
+		long generated = 0; // The number of values generated
 
 		// Generates random numbers until the target size is reached
 		while (writtenBytes < size)
@@ -221,14 +222,16 @@ public final class RandomNumberGenerator
 				}
 				while (value.length() < diff);
 			}
-			// If maxValue wasn't still set or is less then the generated number update its value
-			if (maxValue == null || maxValue < number)
+			generated++;
+
+			// If maxValue is less then the generated number update its value
+			if (maxValue < number)
 			{
 				maxValue = number;
 			}
 
-			// If minValue wasn't still set or is greater then the generated number update its value
-			if (minValue == null || minValue > number)
+			// If minValue is greater then the generated number update its value
+			if (minValue > number)
 			{
 				minValue = number;
 			}
@@ -257,13 +260,13 @@ public final class RandomNumberGenerator
 		output.flush();
 
 		// If at least one number was generated, print the maximum value of generated numbers
-		if (maxValue != null)
+		if (generated > 0)
 		{
 			printLine(Messages.INFO_MESSAGE_MAXIMUM_GENERATED_VALUE, maxValue);
 		}
 
 		// If at least one number was generated, print the minimum value of generated numbers
-		if (minValue != null)
+		if (generated > 0)
 		{
 			printLine(Messages.INFO_MESSAGE_MINIMUM_GENERATED_VALUE, minValue);
 		}
@@ -0,0 +1,379 @@
+package sort;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * <p>Sorts records (lines with a numeric key and any payload) with a tag sort.</p>
+ * <p>Only (key, offset of the record in the input) pairs are sorted, stored two by two in {@code long} arrays, spilled
+ * to binary runs and merged. The payloads are read back from the input by offset only while writing the output,
+ * so memory and temporary files grow with the number of records and not with their width.
+ * Records with the same key keep their input order.</p>
+ */
+public class RecordSort {
+    public static final int DEFAULT_BLOCK_RECORDS = 1 << 20;
+    private static final byte[] NEWLINE = System.lineSeparator().getBytes();
+
+    private final KeyExtractor extractor;
+    private final int blockRecords;
+
+    public RecordSort(KeyExtractor extractor) {
+        this(extractor, DEFAULT_BLOCK_RECORDS);
+    }
+
+    public RecordSort(KeyExtractor extractor, int blockRecords) {
+        if(blockRecords < 1)
+            throw new IllegalArgumentException("Block size must be positive: " + blockRecords);
+        this.extractor = extractor;
+        this.blockRecords = blockRecords;
+    }
+
+    /**
+     * <p>Usage: {@code RecordSort <input> <output> [-d <delimiter>] [-c <column>] [-f <offset> -l <length>] [-u]}</p>
+     * <p>By default the key is the first column separated by {@code ,}; {@code -f}/{@code -l} select a fixed
+     * position key instead and {@code -u} reads keys as unsigned numbers.</p>
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length < 2) {
+            System.err.println("Usage: RecordSort <input> <output> [-d <delimiter>] [-c <column>] [-f <offset> -l <length>] [-u]");
+            System.exit(1);
+        }
+        char delimiter = ',';
+        int column = 1;
+        int offset = -1;
+        int length = -1;
+        boolean unsigned = false;
+        for(int i = 2; i < args.length; i++) {
+            switch(args[i]) {
+                case "-d": delimiter = args[++i].equals("\\t") ? '\t' : args[i].charAt(0); break;
+                case "-c": column = Integer.parseInt(args[++i]); break;
+                case "-f": offset = Integer.parseInt(args[++i]); break;
+                case "-l": length = Integer.parseInt(args[++i]); break;
+                case "-u": unsigned = true; break;
+                default: throw new IllegalArgumentException("Unknown argument: " + args[i]);
+            }
+        }
+        KeyExtractor extractor = offset >= 0
+                ? KeyExtractor.fixed(offset, length, unsigned)
+                : KeyExtractor.column(delimiter, column, unsigned);
+        long start = System.currentTimeMillis();
+        long rows = new RecordSort(extractor).sort(new File(args[0]), args[1]);
+        Utils.printLine(Utils.Messages.RECORD_SORT_END, rows);
+        Utils.printLine(Utils.Messages.ELAPSED_TIME, (System.currentTimeMillis() - start) / 1000);
+    }
+
+    /**
+     * Sorts the records of {@code input} by key and writes them to {@code outputfile}. Returns the number of records.
+     */
+    public long sort(File input, String outputfile) throws IOException {
+        List<File> runs = new ArrayList<>();
+        long[] pairs = new long[2 * blockRecords];
+        int n = 0;
+        long rows = 0;
+        try {
+            byte[] buf = new byte[NumberReader.BUFFERSIZE];
+            int len = 0;
+            int start = 0;
+            int scan = 0;
+            long base = 0; //offset nel file di buf[0]
+            try(InputStream in = new FileInputStream(input)) {
+                while(true) {
+                    int i = Digits.indexOfNewline(buf, scan, len);
+                    int end;
+                    boolean last = false;
+                    if(i < len) {
+                        end = i;
+                        scan = i + 1;
+                    } else {
+                        //riga non completa: compatto il buffer e leggo ancora
+                        if(start > 0) {
+                            System.arraycopy(buf, start, buf, 0, len - start);
+                            base += start;
+                            len -= start;
+                            scan = len;
+                            start = 0;
+                        } else {
+                            scan = len;
+                        }
+                        if(len == buf.length) {
+                            byte[] bigger = new byte[buf.length * 2];
+                            System.arraycopy(buf, 0, bigger, 0, len);
+                            buf = bigger;
+                        }
+                        int r = in.read(buf, len, buf.length - len);
+                        if(r > 0) {
+                            len += r;
+                            continue;
+                        }
+                        if(len == start)
+                            break;
+                        end = len;
+                        scan = len;
+                        last = true;
+                    }
+                    int recordEnd = end > start && buf[end - 1] == '\r' ? end - 1 : end;
+                    if(recordEnd > start) {
+                        if(n == blockRecords) {
+                            runs.add(saveRun(pairs, n));
+                            n = 0;
+                        }
+                        pairs[2 * n] = extractor.extract(buf, start, recordEnd);
+                        pairs[2 * n + 1] = base + start;
+                        n++;
+                        rows++;
+                    }
+                    start = scan;
+                    if(last)
+                        break;
+                }
+            }
+            try(FileChannel channel = new FileInputStream(input).getChannel();
+                OutputStream out = new BufferedOutputStream(new FileOutputStream(outputfile), NumberReader.BUFFERSIZE)) {
+                Gatherer gatherer = new Gatherer(channel, out, input.length() / Math.max(1, rows));
+                if(runs.isEmpty()) {
+                    //tutto in memoria: nessun run su disco
+                    sortPairs(pairs, n);
+                    for(int i = 0; i < n; i++)
+                        gatherer.write(pairs[2 * i + 1]);
+                } else {
+                    if(n > 0)
+                        runs.add(saveRun(pairs, n));
+                    pairs = null;
+                    mergeRuns(runs, gatherer);
+                }
+            }
+        } finally {
+            for(File f : runs) f.delete();
+        }
+        return rows;
+    }
+
+    private static File saveRun(long[] pairs, int n) throws IOException {
+        sortPairs(pairs, n);
+        File newtmpfile = File.createTempFile("recordSort", "run");
+        newtmpfile.deleteOnExit();
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(newtmpfile), NumberReader.BUFFERSIZE))) {
+            for(int i = 0; i < 2 * n; i++)
+                out.writeLong(pairs[i]);
+        }
+        return newtmpfile;
+    }
+
+    private static void mergeRuns(List<File> runs, Gatherer gatherer) throws IOException {
+        PriorityQueue<RunReader> pq = new PriorityQueue<>(runs.size(),
+                (RunReader i, RunReader j) -> comparePairs(i.key, i.offset, j.key, j.offset));
+        try {
+            for(File f : runs) {
+                RunReader r = new RunReader(f);
+                if(r.next())
+                    pq.add(r);
+                else
+                    r.close();
+            }
+            while(pq.size() > 0) {
+                RunReader r = pq.poll();
+                gatherer.write(r.offset);
+                if(r.next())
+                    pq.add(r);
+                else
+                    r.close();
+            }
+        } finally {
+            for(RunReader r : pq) r.close();
+        }
+    }
+
+    private static int comparePairs(long k1, long o1, long k2, long o2) {
+        if(k1 != k2)
+            return k1 < k2 ? -1 : 1;
+        return Long.compare(o1, o2);
+    }
+
+    /**
+     * Sorts the first {@code n} (key, offset) pairs stored as {@code pairs[2i]}, {@code pairs[2i+1]}.
+     */
+    static void sortPairs(long[] pairs, int n) {
+        if(n < 2)
+            return;
+        int[] stack = new int[128];
+        int top = -1;
+        stack[++top] = 0;
+        stack[++top] = n - 1;
+        while(top >= 0) {
+            int h = stack[top--];
+            int l = stack[top--];
+            while(h - l >= 16) {
+                int p = partitionPairs(pairs, l, h);
+                //prima la parte piu' piccola, cosi' lo stack resta logaritmico
+                if(p - l < h - p) {
+                    stack[++top] = p + 1;
+                    stack[++top] = h;
+                    h = p - 1;
+                } else {
+                    stack[++top] = l;
+                    stack[++top] = p - 1;
+                    l = p + 1;
+                }
+            }
+            for(int i = l + 1; i <= h; i++) {
+                long k = pairs[2 * i];
+                long o = pairs[2 * i + 1];
+                int j = i - 1;
+                while(j >= l && comparePairs(pairs[2 * j], pairs[2 * j + 1], k, o) > 0) {
+                    pairs[2 * j + 2] = pairs[2 * j];
+                    pairs[2 * j + 3] = pairs[2 * j + 1];
+                    j--;
+                }
+                pairs[2 * j + 2] = k;
+                pairs[2 * j + 3] = o;
+            }
+        }
+    }
+
+    private static int partitionPairs(long[] pairs, int l, int h) {
+        //pivot mediano di tre, spostato in fondo
+        int m = (l + h) >>> 1;
+        if(comparePairs(pairs[2 * m], pairs[2 * m + 1], pairs[2 * l], pairs[2 * l + 1]) < 0) swapPairs(pairs, l, m);
+        if(comparePairs(pairs[2 * h], pairs[2 * h + 1], pairs[2 * l], pairs[2 * l + 1]) < 0) swapPairs(pairs, l, h);
+        if(comparePairs(pairs[2 * h], pairs[2 * h + 1], pairs[2 * m], pairs[2 * m + 1]) < 0) swapPairs(pairs, m, h);
+        swapPairs(pairs, m, h);
+        long k = pairs[2 * h];
+        long o = pairs[2 * h + 1];
+        int i = l - 1;
+        for(int j = l; j < h; j++) {
+            if(comparePairs(pairs[2 * j], pairs[2 * j + 1], k, o) <= 0) {
+                i++;
+                swapPairs(pairs, i, j);
+            }
+        }
+        swapPairs(pairs, i + 1, h);
+        return i + 1;
+    }
+
+    private static void swapPairs(long[] pairs, int i, int j) {
+        long k = pairs[2 * i];
+        long o = pairs[2 * i + 1];
+        pairs[2 * i] = pairs[2 * j];
+        pairs[2 * i + 1] = pairs[2 * j + 1];
+        pairs[2 * j] = k;
+        pairs[2 * j + 1] = o;
+    }
+
+    private static class RunReader {
+        private final DataInputStream in;
+        private long key;
+        private long offset;
+
+        RunReader(File f) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(f), NumberReader.BUFFERSIZE));
+        }
+
+        boolean next() throws IOException {
+            try {
+                key = in.readLong();
+            } catch(EOFException eof) {
+                return false;
+            }
+            offset = in.readLong();
+            return true;
+        }
+
+        void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * Copies records from the input to the output by offset. After the sort the offsets come in random order, so a
+     * miss reads only about one record (twice the average record length, between {@value #MIN_READ} and
+     * {@value #MAX_READ} bytes) and the read grows only while the record has no line terminator yet; records close to
+     * each other still share a read.
+     */
+    private static class Gatherer {
+        private static final int MIN_READ = 256;
+        private static final int MAX_READ = 4096;
+
+        private final FileChannel channel;
+        private final OutputStream out;
+        private final long size;
+        private final int readSize;
+        private ByteBuffer window;
+        private long windowStart = -1;
+
+        Gatherer(FileChannel channel, OutputStream out, long averageRecord) throws IOException {
+            this.channel = channel;
+            this.out = out;
+            size = channel.size();
+            readSize = (int)Math.max(MIN_READ, Math.min(MAX_READ, 2 * averageRecord));
+            window = ByteBuffer.allocate(readSize);
+            window.limit(0);
+        }
+
+        void write(long offset) throws IOException {
+            if(windowStart < 0 || offset < windowStart || offset >= windowStart + window.limit())
+                load(offset);
+            int from = (int)(offset - windowStart);
+            int i = from;
+            while(true) {
+                while(i < window.limit() && window.get(i) != '\n') i++;
+                if(i < window.limit() || windowStart + window.limit() >= size)
+                    break;
+                //il record prosegue oltre la parte letta
+                if(from > 0) {
+                    load(offset);
+                    i = 0;
+                    from = 0;
+                } else {
+                    int want = Math.max(readSize, 2 * window.limit());
+                    if(want > window.capacity()) {
+                        ByteBuffer bigger = ByteBuffer.allocate(want);
+                        window.rewind();
+                        bigger.put(window);
+                        bigger.flip();
+                        window = bigger;
+                    }
+                    fill(want);
+                }
+            }
+            int end = i > from && window.get(i - 1) == '\r' ? i - 1 : i;
+            out.write(window.array(), from, end - from);
+            out.write(NEWLINE);
+        }
+
+        private void load(long offset) throws IOException {
+            windowStart = offset;
+            window.clear();
+            window.limit(0);
+            fill(readSize);
+        }
+
+        /**
+         * Reads after the bytes already in the window until it holds {@code upTo} bytes or the input ends.
+         */
+        private void fill(int upTo) throws IOException {
+            int len = window.limit();
+            window.limit(upTo);
+            window.position(len);
+            while(window.hasRemaining()) {
+                int r = channel.read(window, windowStart + window.position());
+                if(r <= 0) break;
+            }
+            window.limit(window.position());
+            window.position(0);
+        }
+    }
+}
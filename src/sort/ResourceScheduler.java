@@ -0,0 +1,93 @@
+package sort;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * <p>Shares a global memory and temporary disk budget between concurrent sort jobs.</p>
+ * <p>A job asks for the memory and disk it needs and waits until both are free; requests bigger than the whole
+ * budget are cut to the budget, so every job can eventually run. Requests are served in arrival order: a small job
+ * does not overtake a big one waiting for the whole budget, so the big one is not starved. The grant is given back
+ * when it is closed.</p>
+ */
+public class ResourceScheduler {
+    private final long totalMemory;
+    private final long totalDisk;
+    private long freeMemory;
+    private long freeDisk;
+    private final Queue<Object> waiting = new ArrayDeque<>();
+
+    public ResourceScheduler(long totalMemory, long totalDisk) {
+        if(totalMemory <= 0 || totalDisk <= 0)
+            throw new IllegalArgumentException("Budget must be positive: memory " + totalMemory + ", disk " + totalDisk);
+        this.totalMemory = totalMemory;
+        this.totalDisk = totalDisk;
+        freeMemory = totalMemory;
+        freeDisk = totalDisk;
+    }
+
+    public long totalMemory() {
+        return totalMemory;
+    }
+
+    public long totalDisk() {
+        return totalDisk;
+    }
+
+    /**
+     * Blocks until every earlier request has been served and {@code memory} bytes of heap and {@code disk} bytes of
+     * temporary disk are available, then reserves them.
+     */
+    public synchronized Grant acquire(long memory, long disk) throws InterruptedException {
+        long m = Math.min(Math.max(memory, 0), totalMemory);
+        long d = Math.min(Math.max(disk, 0), totalDisk);
+        Object ticket = new Object();
+        waiting.add(ticket);
+        try {
+            while(waiting.peek() != ticket || freeMemory < m || freeDisk < d)
+                wait();
+        } finally {
+            //servito o interrotto: in entrambi i casi tocca alla richiesta successiva
+            waiting.remove(ticket);
+            notifyAll();
+        }
+        freeMemory -= m;
+        freeDisk -= d;
+        return new Grant(m, d);
+    }
+
+    private synchronized void release(Grant grant) {
+        freeMemory += grant.memory;
+        freeDisk += grant.disk;
+        notifyAll();
+    }
+
+    public class Grant implements AutoCloseable {
+        private final long memory;
+        private final long disk;
+        private boolean released;
+
+        private Grant(long memory, long disk) {
+            this.memory = memory;
+            this.disk = disk;
+        }
+
+        public long memory() {
+            return memory;
+        }
+
+        public long disk() {
+            return disk;
+        }
+
+        @Override
+        public void close() {
+            synchronized(ResourceScheduler.this) {
+                if(released)
+                    return;
+                released = true;
+            }
+            release(this);
+        }
+    }
+}
@@ -9,6 +9,8 @@ public class Sort {
     public static long startTime = System.currentTimeMillis();
     public static int x=1; //contatore file totali che vengono ordinati
     public static int MAX_TEMP = 128; //max number of slice
+    public static final String INDEX_PROPERTY = "sort.index"; //righe per blocco dell'indice sparso, 0 = nessun indice
+    public static final String MEMORY_PROPERTY = "sort.memory"; //byte per l'ordinamento in memoria, default memoryBudget()
 
 
     public static void main(String[] args) throws IOException {
@@ -18,13 +20,19 @@ public class Sort {
                     + " with path if different from root app");
             String outputfile = "result.txt";
             MAX_TEMP = Utils.readNumber("Insert max number of slice");
-            List<File> file = sortInBatch(new File(inputfile));
-            //Utils.printLine(Utils.Messages.ELAPSED_TIME_FILE, (System.currentTimeMillis() - start) / 1000);
-            //Utils.printLine(Utils.Messages.SORT_END_FILE);
-            //startTime = System.currentTimeMillis();
-            BinaryFileBuffer.mergeSortedFiles(file,outputfile);
-            //Utils.printLine(Utils.Messages.ELAPSED_TIME_FILE, (System.currentTimeMillis() - startTime) / 1000);
-            //Utils.printLine(Utils.Messages.MERGE_END);
+            int indexEvery = Integer.getInteger(INDEX_PROPERTY, 0);
+            long budget = Long.getLong(MEMORY_PROPERTY, memoryBudget());
+            SortStatistics statistics = SortStatistics.fromProperties();
+            //se il file sta nella memoria disponibile niente file temporanei e niente merge
+            if(sortInMemory(new File(inputfile), outputfile, indexEvery, budget, statistics) < 0){
+                //Utils.printLine(Utils.Messages.ELAPSED_TIME_FILE, (System.currentTimeMillis() - start) / 1000);
+                //Utils.printLine(Utils.Messages.SORT_END_FILE);
+                //startTime = System.currentTimeMillis();
+                sortWithArena(new File(inputfile), outputfile, MAX_TEMP, indexEvery, statistics);
+                //Utils.printLine(Utils.Messages.ELAPSED_TIME_FILE, (System.currentTimeMillis() - startTime) / 1000);
+                //Utils.printLine(Utils.Messages.MERGE_END);
+            }
+            statistics.write(outputfile);
             Utils.printLine(Utils.Messages.ELAPSED_TIME, (System.currentTimeMillis() - start) / 1000);
             System.out.println("Result in root app: "+outputfile);
         }catch(IOException e){
@@ -33,6 +41,70 @@ public class Sort {
         }
     }
 
+    // Memoria libera che il percorso in memoria puo' usare: meta' di quella ancora disponibile nello heap
+    public static long memoryBudget() {
+        Runtime rt = Runtime.getRuntime();
+        return (rt.maxMemory() - (rt.totalMemory() - rt.freeMemory())) / 2;
+    }
+
+    // Percorso veloce: se il file sta nel budget lo carica in un solo array, lo ordina con
+    // Arrays.parallelSort (merge sort parallelo fork-join) e scrive direttamente il risultato.
+    // Restituisce il numero di righe, oppure -1 se il file non sta nel budget (va usato sortInBatch).
+    public static long sortInMemory(File file, String outputfile, int indexEvery, long budget) throws IOException {
+        return sortInMemory(file, outputfile, indexEvery, budget, null);
+    }
+
+    // Con statistics != null raccoglie anche le statistiche (vedi SortStatistics)
+    public static long sortInMemory(File file, String outputfile, int indexEvery, long budget, SortStatistics statistics) throws IOException {
+        //parallelSort usa un array di appoggio grande quanto i dati: 16 byte per numero
+        long maxValues = Math.min(budget / 16, Integer.MAX_VALUE - 8);
+        long estimate = estimateLines(file);
+        if(estimate > maxValues)
+            return -1;
+        long[] list = new long[(int)Math.max(16, Math.min(maxValues, estimate + estimate / 8))];
+        int dim = 0;
+        try(NumberReader reader = new NumberReader(file)) {
+            while(reader.hasNext()) {
+                if(dim == list.length) {
+                    //la stima era sbagliata: si cresce finche' si resta nel budget
+                    if(dim >= maxValues)
+                        return -1;
+                    list = Arrays.copyOf(list, (int)Math.min(maxValues, list.length * 2L));
+                }
+                list[dim++] = reader.next();
+            }
+        }
+        //le statistiche solo ora: se il file non stava nel budget non vanno contati i valori gia' letti
+        if(statistics != null)
+            for(int i = 0; i < dim; i++)
+                statistics.accept(list[i]);
+        Arrays.parallelSort(list, 0, dim);
+        try(SortedOutputWriter fbw = new SortedOutputWriter(outputfile, indexEvery)) {
+            fbw.setStatistics(statistics);
+            for(int i = 0; i < dim; i++)
+                fbw.write(list[i]);
+        }
+        return dim;
+    }
+
+    // Stima il numero di righe dalla lunghezza media delle righe del primo blocco del file
+    static long estimateLines(File file) throws IOException {
+        long length = file.length();
+        if(length == 0)
+            return 0;
+        byte[] buf = new byte[(int)Math.min(length, NumberReader.BUFFERSIZE)];
+        int n;
+        try(InputStream in = new FileInputStream(file)) {
+            n = in.read(buf);
+        }
+        int lines = 0;
+        for(int i = 0; i < n; i++)
+            if(buf[i] == '\n') lines++;
+        if(lines == 0)
+            return 1;
+        return (long)((double)length * lines / n) + 1;
+    }
+
     // Carica i file in blocchi di x righe, li ordina in memoria e
     // scrive i risultati in file temporanei che verranno poi fusi (merge)
     public static List<File> sortInBatch(File file) throws IOException {
@@ -63,10 +135,13 @@ public class Sort {
                     blocksizecorrente ++;
                 }
                 if(blocksizecorrente < blocksize){
-                    lista = new long[(int)blocksizecorrente];
-                    for(int i=0;i<lista.length;i++)
-                        lista[i]=list[i];
-                    files.add(sortAndSave(lista));
+                    //un blocco vuoto (file multiplo esatto di blocksize) non va salvato
+                    if(blocksizecorrente > 0){
+                        lista = new long[(int)blocksizecorrente];
+                        for(int i=0;i<lista.length;i++)
+                            lista[i]=list[i];
+                        files.add(sortAndSave(lista));
+                    }
                     dim = 0;
                 }
                 else{
@@ -85,7 +160,93 @@ public class Sort {
         return files;
     }
 
+    // Come sortInBatch(File), ma con maxTemp al posto di MAX_TEMP e blocchi che seguono la memoria libera:
+    // sotto pressione il blocco corrente viene salvato subito e i blocchi successivi dimezzano,
+    // quando torna spazio crescono di nuovo fino alla dimensione calcolata da maxTemp.
+    // I run finiscono come segmenti di un'unica SpillArena invece che in un file ciascuno
+    public static List<SpillArena.Segment> sortInBatch(File file, int maxTemp, MemoryMonitor monitor, SpillArena arena) throws IOException {
+        return sortInBatch(file, maxTemp, monitor, arena, null);
+    }
+
+    // Ordina file con i run nella SpillArena e li fonde in outputfile, restituisce il numero di righe
+    public static long sortWithArena(File file, String outputfile, int maxTemp, int indexEvery) throws IOException {
+        return sortWithArena(file, outputfile, maxTemp, indexEvery, null);
+    }
+
+    public static long sortWithArena(File file, String outputfile, int maxTemp, int indexEvery, SortStatistics statistics) throws IOException {
+        try(MemoryMonitor monitor = new MemoryMonitor();
+            SpillArena arena = new SpillArena(8 * estimateLines(file))) {
+            List<SpillArena.Segment> runs = sortInBatch(file, maxTemp, monitor, arena, statistics);
+            try(SortedOutputWriter fbw = new SortedOutputWriter(outputfile, indexEvery)) {
+                fbw.setStatistics(statistics);
+                return arena.merge(runs, fbw);
+            }
+        }
+    }
+
+    // Con statistics != null raccoglie anche le statistiche dei valori letti
+    public static List<SpillArena.Segment> sortInBatch(File file, int maxTemp, MemoryMonitor monitor, SpillArena arena, SortStatistics statistics) throws IOException {
+        List<SpillArena.Segment> files = new ArrayList<>();
+        long blocksize = (file.length() / maxTemp);
+        blocksize/=12;
+        if(blocksize==0)
+            blocksize=file.length();
+        //un blocco non supera il budget della memoria ancora libera (8 byte per numero)
+        long maxValues = Math.min(blocksize, memoryBudget() / 8);
+        int maxBlock = (int)Math.max(1, Math.min(maxValues, Integer.MAX_VALUE - 8));
+        int minBlock = Math.max(1, Math.min(maxBlock, maxBlock / 64));
+        int block = maxBlock;
+        long[] list = null;
+        int dim = 0;
+        boolean wasPressure = false;
+        try(NumberReader reader = new NumberReader(file)) {
+            while(reader.hasNext()) {
+                if(list == null) {
+                    //gia' sotto pressione: il nuovo blocco parte piu' piccolo
+                    if(block > minBlock && monitor.underPressure())
+                        block = Math.max(minBlock, block / 2);
+                    list = new long[block];
+                }
+                long value = reader.next();
+                if(statistics != null)
+                    statistics.accept(value);
+                list[dim++] = value;
+                boolean full = dim == list.length;
+                boolean pressure = false;
+                //al blocco minimo non si scarica in anticipo: si aspetta che sia pieno
+                if(!full && block > minBlock && (dim & 4095) == 0) {
+                    //scarica in anticipo solo quando la pressione inizia, non a ogni controllo finche' dura
+                    boolean under = monitor.underPressure();
+                    pressure = under && !wasPressure;
+                    wasPressure = under;
+                }
+                if(full || pressure) {
+                    files.add(saveRun(arena, list, dim));
+                    dim = 0;
+                    boolean under = pressure || monitor.underPressure();
+                    wasPressure = under;
+                    int next = block;
+                    if(under)
+                        next = Math.max(minBlock, block / 2);
+                    else if(monitor.hasHeadroom())
+                        next = (int)Math.min(maxBlock, block * 2L);
+                    if(pressure || next != block) {
+                        //il vecchio array va rilasciato prima di allocare il nuovo
+                        list = null;
+                        block = next;
+                    }
+                }
+            }
+        }
+        if(dim > 0)
+            files.add(saveRun(arena, list, dim));
+        return files;
+    }
 
+    private static SpillArena.Segment saveRun(SpillArena arena, long[] list, int length) throws IOException {
+        QuickSort(list, 0, length - 1);
+        return arena.write(list, length);
+    }
 
     public static File sortAndSave(long[]tmplist) throws IOException  {
         //startTime = System.currentTimeMillis();
@@ -98,15 +259,9 @@ public class Sort {
         //Utils.printLine(Utils.Messages.ELAPSED_TIME_FILE, (System.currentTimeMillis() - startTime) / 1000);
         //startTime = System.currentTimeMillis();
         try(
-            BufferedWriter fbw = new BufferedWriter(new FileWriter(newtmpfile))) {
-            for(int i = 0; i<tmplist.length ; i++){
-                if(i!=tmplist.length){
-                    fbw.write(new String(""+tmplist[i]));
-                    fbw.newLine();
-                }
-                else
-                    fbw.write(new String(""+tmplist[i]));
-            }
+            SortedOutputWriter fbw = new SortedOutputWriter(newtmpfile.getPath())) {
+            for(int i = 0; i<tmplist.length ; i++)
+                fbw.write(tmplist[i]);
         }
         //Utils.printLine(Utils.Messages.ELAPSED_TIME_FILE, (System.currentTimeMillis() - startTime) / 1000);
         return newtmpfile;
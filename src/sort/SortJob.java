@@ -0,0 +1,63 @@
+package sort;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+
+/**
+ * <p>One sort of a file, with all its settings in the instance and none in static fields, so that several jobs can run
+ * in the same JVM at the same time.</p>
+ * <p>The job asks the {@link ResourceScheduler} for the memory and disk it needs: if the granted memory holds the whole
+ * input it is sorted with {@link Sort#sortInMemory}, otherwise the number of slices is raised until a single slice fits
+ * the granted memory and the file is sorted with {@link Sort#sortWithArena}, under a new grant that also reserves the
+ * disk for the slices. The {@link SortStatistics} report is written next to the output.</p>
+ */
+public class SortJob implements Callable<Long> {
+    private final File input;
+    private final String outputfile;
+    private final int maxTemp;
+    private final int indexEvery;
+    private final ResourceScheduler scheduler;
+
+    public SortJob(File input, String outputfile, int maxTemp, int indexEvery, ResourceScheduler scheduler) {
+        if(maxTemp < 1)
+            throw new IllegalArgumentException("Max number of slice must be positive: " + maxTemp);
+        this.input = input;
+        this.outputfile = outputfile;
+        this.maxTemp = maxTemp;
+        this.indexEvery = indexEvery;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Runs the job and returns the number of sorted rows.
+     */
+    @Override
+    public Long call() throws IOException, InterruptedException {
+        if(!input.isFile())
+            throw new IOException("File not exist: " + input);
+        long length = input.length();
+        //come in Sort.sortInMemory: 16 byte per numero, con il margine dell'array sulla stima delle righe
+        long estimate = Sort.estimateLines(input);
+        long inMemory = 16 * (estimate + estimate / 8);
+        if(inMemory <= scheduler.totalMemory()) {
+            try(ResourceScheduler.Grant grant = scheduler.acquire(inMemory, 0)) {
+                SortStatistics statistics = SortStatistics.fromProperties();
+                long rows = Sort.sortInMemory(input, outputfile, indexEvery, grant.memory(), statistics);
+                if(rows >= 0) {
+                    statistics.write(outputfile);
+                    return rows;
+                }
+            }
+        }
+        //il file non sta in memoria: la richiesta si rifa' con il disco per le slice
+        try(ResourceScheduler.Grant grant = scheduler.acquire(Math.min(inMemory, scheduler.totalMemory()), length)) {
+            //sortInBatch tiene in memoria un blocco di file.length() / slice / 12 numeri da 8 byte
+            long slices = Math.max(maxTemp, (8 * length / 12) / Math.max(1, grant.memory()) + 1);
+            SortStatistics statistics = SortStatistics.fromProperties();
+            long rows = Sort.sortWithArena(input, outputfile, (int)Math.min(slices, Integer.MAX_VALUE), indexEvery, statistics);
+            statistics.write(outputfile);
+            return rows;
+        }
+    }
+}
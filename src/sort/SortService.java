@@ -0,0 +1,89 @@
+package sort;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * <p>Long running local sort service: jobs are sent over a socket bound to the loopback address and run as
+ * concurrent {@link SortJob}s in the same warm JVM, sharing one {@link ResourceScheduler}.</p>
+ * <p>The protocol is one line for each request and one line for each answer:
+ * 		<ul><li>{@code SORT <input> <output> [<max slice> [<index every>]]} answers {@code OK <rows> <millis>}
+ * 			or {@code ERROR <message>}</li>
+ * 		</ul>
+ * A connection can send any number of requests.</p>
+ */
+public class SortService {
+    public static final int DEFAULT_PORT = 7070;
+
+    private final ResourceScheduler scheduler;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    public SortService(ResourceScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Usage: {@code SortService [<port> [<memory bytes> [<disk bytes>]]]}. By default the memory budget is half of the
+     * heap and the disk budget is the free space of the temporary directory.
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        long memory = args.length > 1 ? Long.parseLong(args[1]) : Runtime.getRuntime().maxMemory() / 2;
+        long disk = args.length > 2 ? Long.parseLong(args[2]) : new File(System.getProperty("java.io.tmpdir")).getUsableSpace();
+        new SortService(new ResourceScheduler(memory, disk)).serve(port);
+    }
+
+    public void serve(int port) throws IOException {
+        try(ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            Utils.printLine(Utils.Messages.SERVICE_START, server.getLocalPort(), scheduler.totalMemory(), scheduler.totalDisk());
+            while(true) {
+                Socket socket = server.accept();
+                executor.execute(() -> handle(socket));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private void handle(Socket socket) {
+        try(Socket s = socket;
+            BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream()));
+            PrintWriter out = new PrintWriter(s.getOutputStream(), true)) {
+            String line;
+            while((line = in.readLine()) != null) {
+                if(line.trim().isEmpty())
+                    continue;
+                out.println(execute(line.trim().split("\\s+")));
+            }
+        } catch(IOException e) {
+            System.err.println("Connection error: " + e.getMessage());
+        }
+    }
+
+    String execute(String[] request) {
+        if(!"SORT".equalsIgnoreCase(request[0]) || request.length < 3)
+            return "ERROR usage: SORT <input> <output> [<max slice> [<index every>]]";
+        try {
+            long start = System.currentTimeMillis();
+            SortJob job = new SortJob(new File(request[1]), request[2],
+                    request.length > 3 ? Integer.parseInt(request[3]) : Sort.MAX_TEMP,
+                    request.length > 4 ? Integer.parseInt(request[4]) : 0,
+                    scheduler);
+            long rows = job.call();
+            return "OK " + rows + " " + (System.currentTimeMillis() - start);
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "ERROR interrupted";
+        } catch(Exception e) {
+            return "ERROR " + e.getMessage();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package sort;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.Arrays;
+
+/**
+ * <p>Summary statistics computed from the values the sorter already reads and writes, with no extra pass on the data.</p>
+ * <p>Count, minimum, maximum and sum come from parsing ({@link #accept(long)}); the exact number of distinct values and
+ * the exact quantiles come from the sorted output stream ({@link #acceptOrdered(long)}), where the value of a given
+ * rank is simply the value written at that position. Quantiles use the nearest rank definition: the quantile {@code q}
+ * of {@code n} values is the value of rank {@code ceil(q * n)}.</p>
+ */
+public class SortStatistics {
+    public static final String STATS_SUFFIX = ".stats";
+    public static final String QUANTILES_PROPERTY = "sort.quantiles";
+    public static final String DEFAULT_QUANTILES = "0.25,0.5,0.75,0.9,0.99";
+
+    private final BigDecimal[] quantiles;
+    private final long[] quantileValues;
+    private long count;
+    private long min = Long.MAX_VALUE;
+    private long max = Long.MIN_VALUE;
+    private long sum;
+    private BigInteger sumOverflow = BigInteger.ZERO;
+
+    private long ordered;
+    private long distinct;
+    private long previous;
+    private long[] ranks;
+    private long rankedCount;
+    private int nextQuantile;
+
+    public SortStatistics(double... quantiles) {
+        this(decimals(quantiles));
+    }
+
+    /**
+     * Statistics with exact decimal quantiles, so that the rank {@code ceil(q * n)} has no binary rounding error
+     * (0.07 of 100 values is rank 7, not 8).
+     */
+    public SortStatistics(BigDecimal... quantiles) {
+        for(BigDecimal q : quantiles)
+            if(q.signum() <= 0 || q.compareTo(BigDecimal.ONE) > 0)
+                throw new IllegalArgumentException("Quantile must be in (0, 1]: " + q);
+        this.quantiles = quantiles.clone();
+        Arrays.sort(this.quantiles);
+        quantileValues = new long[quantiles.length];
+    }
+
+    //BigDecimal.valueOf usa la rappresentazione decimale piu' corta del double: 0.07 resta 0.07
+    private static BigDecimal[] decimals(double[] quantiles) {
+        BigDecimal[] d = new BigDecimal[quantiles.length];
+        for(int i = 0; i < quantiles.length; i++)
+            d[i] = BigDecimal.valueOf(quantiles[i]);
+        return d;
+    }
+
+    /**
+     * Statistics with the quantiles listed in the system property {@value #QUANTILES_PROPERTY}
+     * (default {@value #DEFAULT_QUANTILES}).
+     */
+    public static SortStatistics fromProperties() {
+        String[] parts = System.getProperty(QUANTILES_PROPERTY, DEFAULT_QUANTILES).split(",");
+        BigDecimal[] quantiles = new BigDecimal[parts.length];
+        for(int i = 0; i < parts.length; i++)
+            quantiles[i] = new BigDecimal(parts[i].trim());
+        return new SortStatistics(quantiles);
+    }
+
+    /**
+     * Adds a value read from the input, in any order.
+     */
+    public void accept(long value) {
+        count++;
+        if(value < min) min = value;
+        if(value > max) max = value;
+        long s = sum + value;
+        //overflow: la parte accumulata finora passa nel BigInteger
+        if(((sum ^ s) & (value ^ s)) < 0) {
+            sumOverflow = sumOverflow.add(BigInteger.valueOf(sum));
+            s = value;
+        }
+        sum = s;
+    }
+
+    /**
+     * Fixes in advance the total number of values, so that {@link #accept(long)} and {@link #acceptOrdered(long)} can be
+     * called together on the same stream, as in a merge of data already sorted.
+     */
+    public void expectCount(long total) {
+        if(ranks != null)
+            throw new IllegalStateException("Sorted values already accepted");
+        rank(total);
+    }
+
+    private void rank(long total) {
+        ranks = new long[quantiles.length];
+        for(int i = 0; i < quantiles.length; i++)
+            ranks[i] = Math.max(1, quantiles[i].multiply(BigDecimal.valueOf(total)).setScale(0, RoundingMode.CEILING).longValueExact());
+        rankedCount = total;
+    }
+
+    /**
+     * Adds a value of the sorted output; values must come in order, after every {@link #accept(long)}
+     * unless the total was given with {@link #expectCount(long)}.
+     */
+    public void acceptOrdered(long value) {
+        if(ranks == null)
+            rank(count);
+        if(ordered == 0 || value != previous)
+            distinct++;
+        previous = value;
+        ordered++;
+        while(nextQuantile < ranks.length && ranks[nextQuantile] == ordered)
+            quantileValues[nextQuantile++] = value;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public long distinct() {
+        return distinct;
+    }
+
+    public BigInteger sum() {
+        return sumOverflow.add(BigInteger.valueOf(sum));
+    }
+
+    /**
+     * Writes the report to {@code <outputfile>}{@value #STATS_SUFFIX}, one {@code name=value} for each line.
+     */
+    public void write(String outputfile) throws IOException {
+        if(ordered != count)
+            throw new IllegalStateException("Sorted values (" + ordered + ") differ from parsed values (" + count + ")");
+        if(count > 0 && rankedCount != count)
+            throw new IllegalStateException("Quantiles ranked on " + rankedCount + " values instead of " + count);
+        try(PrintWriter pw = new PrintWriter(new FileWriter(outputfile + STATS_SUFFIX))) {
+            pw.println("count=" + count);
+            if(count > 0) {
+                pw.println("min=" + min);
+                pw.println("max=" + max);
+                pw.println("sum=" + sum());
+                pw.println("mean=" + new BigDecimal(sum()).divide(BigDecimal.valueOf(count), 6, RoundingMode.HALF_EVEN).toPlainString());
+                pw.println("distinct=" + distinct);
+                for(int i = 0; i < quantiles.length; i++)
+                    pw.println("p" + quantiles[i].movePointRight(2).stripTrailingZeros().toPlainString() + "=" + quantileValues[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package sort;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * <p>Writes sorted numbers, one for each line, formatting them with {@link Digits} straight into a byte buffer
+ * instead of creating a {@link String} for every number.</p>
+ * <p>When {@code indexEvery} is positive it also writes a sparse index in the sidecar file
+ * {@code <outputfile>}{@value #INDEX_SUFFIX}: a (first value, byte offset) pair of {@code long}s for every block of
+ * {@code indexEvery} rows or {@value #INDEX_BLOCK_BYTES} bytes, whichever comes first. See {@link SparseIndex}.</p>
+ */
+public class SortedOutputWriter implements Closeable {
+    public static final String INDEX_SUFFIX = ".idx";
+    public static final int INDEX_BLOCK_BYTES = 64 * 1024;
+    private static final byte[] NEWLINE = System.lineSeparator().getBytes();
+    /* Spazio per il numero piu' lungo (20 caratteri) e il fine riga */
+    private static final int MAX_ROW = 20 + NEWLINE.length;
+
+    private final OutputStream fbw;
+    private final byte[] buf = new byte[NumberReader.BUFFERSIZE];
+    private int pos;
+    private final DataOutputStream index;
+    private final int indexEvery;
+    private long offset;
+    private long rows;
+    private long blockRows;
+    private long blockOffset;
+    private SortStatistics statistics;
+
+    public SortedOutputWriter(String outputfile) throws IOException {
+        this(outputfile, 0);
+    }
+
+    public SortedOutputWriter(String outputfile, int indexEvery) throws IOException {
+        fbw = new FileOutputStream(outputfile);
+        this.indexEvery = indexEvery;
+        if(indexEvery > 0) {
+            index = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(outputfile + INDEX_SUFFIX)));
+        } else {
+            index = null;
+        }
+    }
+
+    /**
+     * Passes every written value to {@code statistics} as the sorted stream; {@code null} disables it.
+     */
+    public void setStatistics(SortStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    public void write(long value) throws IOException {
+        if(statistics != null)
+            statistics.acceptOrdered(value);
+        if(index != null && (rows == 0 || rows - blockRows >= indexEvery || offset - blockOffset >= INDEX_BLOCK_BYTES)) {
+            index.writeLong(value);
+            index.writeLong(offset);
+            blockRows = rows;
+            blockOffset = offset;
+        }
+        if(pos + MAX_ROW > buf.length) {
+            fbw.write(buf, 0, pos);
+            pos = 0;
+        }
+        int end = Digits.format(value, buf, pos);
+        for(byte b : NEWLINE)
+            buf[end++] = b;
+        offset += end - pos;
+        pos = end;
+        rows++;
+    }
+
+    /**
+     * Returns the number of rows written so far.
+     */
+    public long rows() {
+        return rows;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            try {
+                fbw.write(buf, 0, pos);
+                pos = 0;
+            } finally {
+                fbw.close();
+            }
+        } finally {
+            if(index != null) index.close();
+        }
+    }
+}
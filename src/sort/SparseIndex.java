@@ -0,0 +1,144 @@
+package sort;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * <p>Point and range lookups on a sorted output written with a sparse index by {@link SortedOutputWriter}.</p>
+ * <p>The whole index is loaded in memory; a lookup binary searches it and reads only the blocks of the sorted
+ * file that may contain the requested values. The sorted file is mapped read-only once, when the index is opened, in
+ * chunks of at most 2 GiB that always end on a block boundary, and every lookup reads its blocks through views of
+ * those mappings: repeated queries create no new mappings.</p>
+ */
+public class SparseIndex implements Closeable {
+    private final long[] firstValues;
+    private final long[] offsets;
+    private final FileChannel channel;
+    private final long size;
+    private final long[] chunkStarts;
+    private final MappedByteBuffer[] chunks;
+
+    public SparseIndex(File sorted) throws IOException {
+        File indexfile = new File(sorted.getPath() + SortedOutputWriter.INDEX_SUFFIX);
+        if(!indexfile.isFile())
+            throw new IOException("Index not exist: " + indexfile);
+        int entries = (int)(indexfile.length() / 16);
+        firstValues = new long[entries];
+        offsets = new long[entries];
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexfile)))) {
+            for(int i = 0; i < entries; i++) {
+                firstValues[i] = in.readLong();
+                offsets[i] = in.readLong();
+            }
+        }
+        channel = new FileInputStream(sorted).getChannel();
+        size = channel.size();
+        //ogni chunk contiene blocchi interi, cosi' un blocco si legge sempre da una sola mappatura
+        long[] starts = new long[Math.max(1, entries)];
+        int n = 1;
+        for(int i = 0; i < entries; i++) {
+            long blockEnd = i + 1 < entries ? offsets[i + 1] : size;
+            if(blockEnd - starts[n - 1] > Integer.MAX_VALUE)
+                starts[n++] = offsets[i];
+        }
+        chunkStarts = Arrays.copyOf(starts, n);
+        chunks = new MappedByteBuffer[n];
+        for(int k = 0; k < n; k++) {
+            long chunkEnd = k + 1 < n ? chunkStarts[k + 1] : size;
+            chunks[k] = channel.map(FileChannel.MapMode.READ_ONLY, chunkStarts[k], chunkEnd - chunkStarts[k]);
+        }
+    }
+
+    public boolean contains(long value) throws IOException {
+        return count(value, value) > 0;
+    }
+
+    /**
+     * Returns the number of values in {@code [from, to]}.
+     */
+    public long count(long from, long to) throws IOException {
+        long[] count = new long[1];
+        range(from, to, v -> count[0]++);
+        return count[0];
+    }
+
+    /**
+     * Returns the values in {@code [from, to]}, in order.
+     */
+    public long[] range(long from, long to) throws IOException {
+        long[][] result = {new long[16]};
+        int[] dim = {0};
+        range(from, to, v -> {
+            if(dim[0] == result[0].length)
+                result[0] = Arrays.copyOf(result[0], dim[0] * 2);
+            result[0][dim[0]++] = v;
+        });
+        return Arrays.copyOf(result[0], dim[0]);
+    }
+
+    /**
+     * Passes to {@code consumer} the values in {@code [from, to]}, in order.
+     */
+    public void range(long from, long to, LongConsumer consumer) throws IOException {
+        if(from > to || firstValues.length == 0)
+            return;
+        //ultimo blocco che inizia con un valore minore di from: i valori uguali possono stare a cavallo di due blocchi
+        int l = 0;
+        int h = firstValues.length;
+        while(l < h) {
+            int m = (l + h) >>> 1;
+            if(firstValues[m] < from)
+                l = m + 1;
+            else
+                h = m;
+        }
+        for(int block = Math.max(0, l - 1); block < firstValues.length && firstValues[block] <= to; block++) {
+            if(!scan(block, from, to, consumer))
+                return;
+        }
+    }
+
+    /**
+     * Scans one block and returns false once a value greater than {@code to} has been found.
+     */
+    private boolean scan(int block, long from, long to, LongConsumer consumer) throws IOException {
+        long start = offsets[block];
+        long end = block + 1 < offsets.length ? offsets[block + 1] : size;
+        int k = Arrays.binarySearch(chunkStarts, start);
+        if(k < 0)
+            k = -k - 2;
+        ByteBuffer buffer = chunks[k].duplicate();
+        buffer.limit((int)(end - chunkStarts[k]));
+        buffer.position((int)(start - chunkStarts[k]));
+        while(buffer.hasRemaining()) {
+            int c = buffer.get();
+            if(c == '\r' || c == '\n')
+                continue;
+            boolean negative = c == '-';
+            long value = negative ? 0 : c - '0';
+            while(buffer.hasRemaining() && (c = buffer.get()) != '\n' && c != '\r')
+                value = value * 10 + (c - '0');
+            if(negative)
+                value = -value;
+            if(value > to)
+                return false;
+            if(value >= from)
+                consumer.accept(value);
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,230 @@
+package sort;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * <p>A single temporary file holding every sorted run of a job as an (offset, length) {@link Segment}, instead of
+ * one temporary file for each run.</p>
+ * <p>The file length is set from the size of the input and grows only if the estimate was too small. Setting the
+ * length with {@link RandomAccessFile#setLength} makes a sparse file on most file systems: it saves the resizes but
+ * reserves no disk blocks, so it neither guarantees the space nor protects from fragmentation. Numbers are
+ * stored as 8 byte binary {@code long}s, so the size of a run is known before writing it. Runs are read with
+ * positional reads on the shared {@link FileChannel}; when there are more than {@value #FAN_IN} runs they are merged
+ * in cascade, and the space of the merged runs is freed and reused for the next intermediate runs.</p>
+ */
+public class SpillArena implements Closeable {
+    public static final int FAN_IN = 128;
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    /* Spazi liberi: offset -> lunghezza, gli spazi adiacenti vengono uniti */
+    private final TreeMap<Long, Long> free = new TreeMap<>();
+    private long end;
+
+    public SpillArena(long expectedBytes) throws IOException {
+        file = File.createTempFile("spillArena", "arena");
+        file.deleteOnExit();
+        raf = new RandomAccessFile(file, "rw");
+        raf.setLength(Math.max(0, expectedBytes));
+        channel = raf.getChannel();
+    }
+
+    public static class Segment {
+        private final long offset;
+        private final long length;
+
+        private Segment(long offset, long length) {
+            this.offset = offset;
+            this.length = length;
+        }
+
+        public long offset() {
+            return offset;
+        }
+
+        /**
+         * Returns the number of values stored in the segment.
+         */
+        public long count() {
+            return length / 8;
+        }
+    }
+
+    /**
+     * Writes the first {@code length} values of {@code list} in a new segment. Several threads can write at the same
+     * time: only the allocation of the segment is synchronized, the writes are positional.
+     */
+    public Segment write(long[] list, int length) throws IOException {
+        Segment segment = allocate(8L * length);
+        SegmentWriter w = new SegmentWriter(segment);
+        for(int i = 0; i < length; i++)
+            w.write(list[i]);
+        w.flush();
+        return segment;
+    }
+
+    /**
+     * Merges {@code runs} into {@code out} and frees them. Returns the number of values written.
+     */
+    public long merge(List<Segment> runs, SortedOutputWriter out) throws IOException {
+        List<Segment> level = new ArrayList<>(runs);
+        //merge a cascata finche' restano al massimo FAN_IN run
+        while(level.size() > FAN_IN) {
+            List<Segment> next = new ArrayList<>();
+            for(int i = 0; i < level.size(); i += FAN_IN) {
+                List<Segment> group = level.subList(i, Math.min(level.size(), i + FAN_IN));
+                if(group.size() == 1) {
+                    next.add(group.get(0));
+                    continue;
+                }
+                long bytes = 0;
+                for(Segment s : group) bytes += s.length;
+                Segment merged = allocate(bytes);
+                SegmentWriter w = new SegmentWriter(merged);
+                mergeInto(group, w::write);
+                w.flush();
+                next.add(merged);
+            }
+            level = next;
+        }
+        long[] rows = new long[1];
+        mergeInto(level, v -> {
+            out.write(v);
+            rows[0]++;
+        });
+        return rows[0];
+    }
+
+    private interface ValueSink {
+        void write(long value) throws IOException;
+    }
+
+    private void mergeInto(List<Segment> group, ValueSink sink) throws IOException {
+        PriorityQueue<SegmentReader> pq = new PriorityQueue<>(Math.max(1, group.size()),
+                (SegmentReader i, SegmentReader j) -> Long.compare(i.value, j.value));
+        for(Segment s : group) {
+            SegmentReader r = new SegmentReader(s);
+            if(r.next())
+                pq.add(r);
+        }
+        while(pq.size() > 0) {
+            SegmentReader r = pq.poll();
+            sink.write(r.value);
+            if(r.next())
+                pq.add(r);
+        }
+        for(Segment s : group)
+            release(s);
+    }
+
+    /**
+     * Returns a free area of {@code bytes} bytes: the first free space big enough, or the end of the arena.
+     */
+    synchronized Segment allocate(long bytes) throws IOException {
+        for(Map.Entry<Long, Long> e : free.entrySet()) {
+            if(e.getValue() >= bytes) {
+                free.remove(e.getKey());
+                if(e.getValue() > bytes)
+                    free.put(e.getKey() + bytes, e.getValue() - bytes);
+                return new Segment(e.getKey(), bytes);
+            }
+        }
+        Segment segment = new Segment(end, bytes);
+        end += bytes;
+        if(end > raf.length())
+            raf.setLength(Math.max(end, raf.length() + raf.length() / 2));
+        return segment;
+    }
+
+    synchronized void release(Segment segment) {
+        if(segment.length == 0)
+            return;
+        long offset = segment.offset;
+        long length = segment.length;
+        Map.Entry<Long, Long> before = free.floorEntry(offset);
+        if(before != null && before.getKey() + before.getValue() == offset) {
+            free.remove(before.getKey());
+            offset = before.getKey();
+            length += before.getValue();
+        }
+        Long after = free.get(offset + length);
+        if(after != null) {
+            free.remove(offset + length);
+            length += after;
+        }
+        free.put(offset, length);
+    }
+
+    private class SegmentWriter {
+        private final ByteBuffer buffer = ByteBuffer.allocate(NumberReader.BUFFERSIZE);
+        private long position;
+
+        SegmentWriter(Segment segment) {
+            position = segment.offset;
+        }
+
+        void write(long value) throws IOException {
+            if(buffer.remaining() < 8)
+                flush();
+            buffer.putLong(value);
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while(buffer.hasRemaining())
+                position += channel.write(buffer, position);
+            buffer.clear();
+        }
+    }
+
+    private class SegmentReader {
+        private final ByteBuffer buffer = ByteBuffer.allocate(NumberReader.BUFFERSIZE);
+        private long position;
+        private final long limit;
+        private long value;
+
+        SegmentReader(Segment segment) {
+            position = segment.offset;
+            limit = segment.offset + segment.length;
+            buffer.flip();
+        }
+
+        boolean next() throws IOException {
+            if(buffer.remaining() < 8) {
+                if(position >= limit)
+                    return false;
+                buffer.clear();
+                buffer.limit((int)Math.min(buffer.capacity(), limit - position));
+                while(buffer.hasRemaining()) {
+                    int n = channel.read(buffer, position);
+                    if(n < 0)
+                        throw new IOException("Spill arena truncated at " + position);
+                    position += n;
+                }
+                buffer.flip();
+            }
+            value = buffer.getLong();
+            return true;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            channel.close();
+        } finally {
+            file.delete();
+        }
+    }
+}
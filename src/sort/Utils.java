@@ -60,6 +60,11 @@ public class Utils {
         public static final String SPLIT_AND_SORT_FILE = "Sort number and write on file";
         public static final String SORT_END_FILE = "Sort ends, start to merge file";
         public static final String MERGE_END = "Merge file ends";
+        public static final String DISTRIBUTED_END = "Sorted {} rows with {} workers";
+        public static final String RECORD_SORT_END = "Sorted {} records";
+        public static final String BUCKET_SORT_END = "Sorted {} rows in {} buckets";
+        public static final String SERVICE_START = "Sort service listening on port {}, memory budget {} bytes, disk budget {} bytes";
+        public static final String INCREMENTAL_END = "Merged {} delta files, sorted file has {} rows";
     }
 
 }
@@ -0,0 +1,194 @@
+package test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import sort.Digits;
+import sort.NumberReader;
+
+//controlla Digits e NumberReader contro Long.parseLong / Long.toString: java test.DigitsCheck [seed]
+//esce con codice 1 se qualche controllo fallisce
+public class DigitsCheck {
+    //byte scelti apposta vicino alle cifre: '/' e ':' sono i confini, 0xB0-0xB9 differiscono solo nel bit alto
+    private static final byte[] NEAR = {'0', '5', '9', '/', ':', '\n', '\r', '-', ' ', (byte)0xB0, (byte)0xB9, 0x00, (byte)0xFF, 0x03, 0x39 + 6};
+    private static int failures;
+    private static int checks;
+
+    static public void main(String args[]) throws IOException {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : System.nanoTime();
+        Random random = new Random(seed);
+        System.out.println("Seed " + seed);
+        checkWords(random);
+        checkNewline(random);
+        checkFormat(random);
+        checkReader(random);
+        checkLimits();
+        System.out.println(checks + " checks, " + failures + " failures");
+        if(failures > 0)
+            System.exit(1);
+    }
+
+    private static void check(boolean ok, String what) {
+        checks++;
+        if(!ok) {
+            failures++;
+            if(failures <= 20)
+                System.err.println("FAIL " + what);
+        }
+    }
+
+    private static void checkWords(Random random) {
+        byte[] b = new byte[8];
+        for(int n = 0; n < 200000; n++) {
+            for(int i = 0; i < 8; i++)
+                b[i] = random.nextInt(4) == 0 ? NEAR[random.nextInt(NEAR.length)] : (byte)('0' + random.nextInt(10));
+            long word = Digits.word(b, 0);
+            int expected = 0;
+            while(expected < 8 && b[expected] >= '0' && b[expected] <= '9') expected++;
+            int k = Digits.digitCount(word);
+            check(k == expected, "digitCount " + new String(b, 0, 8) + " = " + k + ", expected " + expected);
+            if(k > 0 && k == expected) {
+                long value = Digits.parse(word, k);
+                long parsed = Long.parseLong(new String(b, 0, k));
+                check(value == parsed, "parse " + new String(b, 0, k) + " = " + value);
+                check(Digits.power(k) == (long)Math.pow(10, k), "power " + k);
+            }
+        }
+    }
+
+    private static void checkNewline(Random random) {
+        for(int n = 0; n < 20000; n++) {
+            byte[] buf = new byte[1 + random.nextInt(64)];
+            for(int i = 0; i < buf.length; i++)
+                buf[i] = random.nextInt(16) == 0 ? (byte)'\n' : NEAR[random.nextInt(NEAR.length)];
+            int from = random.nextInt(buf.length);
+            int to = from + random.nextInt(buf.length - from + 1);
+            int expected = from;
+            while(expected < to && buf[expected] != '\n') expected++;
+            int found = Digits.indexOfNewline(buf, from, to);
+            check(found == expected, "indexOfNewline [" + from + ", " + to + ") = " + found + ", expected " + expected);
+        }
+    }
+
+    private static void checkFormat(Random random) {
+        byte[] dst = new byte[32];
+        long[] edges = {0, 1, -1, 9, 10, -9, -10, 99, 100, Long.MAX_VALUE, Long.MIN_VALUE, Long.MIN_VALUE + 1};
+        for(long v : edges)
+            checkFormat(v, dst);
+        long p = 1;
+        for(int i = 0; i < 19; i++) {
+            checkFormat(p - 1, dst);
+            checkFormat(p, dst);
+            checkFormat(-p, dst);
+            checkFormat(-(p - 1), dst);
+            p *= 10;
+        }
+        for(int n = 0; n < 200000; n++)
+            checkFormat(random.nextLong() >> random.nextInt(64), dst);
+    }
+
+    private static void checkFormat(long v, byte[] dst) {
+        String expected = Long.toString(v);
+        check(Digits.length(v) == expected.length(), "length " + v + " = " + Digits.length(v));
+        int end = Digits.format(v, dst, 3);
+        check(new String(dst, 3, end - 3).equals(expected), "format " + v + " = " + new String(dst, 3, Math.max(0, end - 3)));
+    }
+
+    //file con numeri di lunghezze diverse, righe vuote e \r\n, abbastanza grande da attraversare piu' buffer
+    private static void checkReader(Random random) throws IOException {
+        File f = File.createTempFile("digitsCheck", "txt");
+        f.deleteOnExit();
+        int rows = 3 * NumberReader.BUFFERSIZE / 8;
+        long[] values = new long[rows];
+        try(OutputStream out = new FileOutputStream(f)) {
+            StringBuilder sb = new StringBuilder();
+            for(int i = 0; i < rows; i++) {
+                long v = random.nextLong() >> random.nextInt(64);
+                if(random.nextInt(50) == 0)
+                    v = random.nextBoolean() ? Long.MAX_VALUE : Long.MIN_VALUE;
+                values[i] = v;
+                sb.append(v).append(random.nextInt(8) == 0 ? "\r\n" : "\n");
+                if(random.nextInt(100) == 0)
+                    sb.append('\n');
+            }
+            //ultima riga senza fine riga
+            sb.setLength(sb.length() - 1);
+            if(sb.charAt(sb.length() - 1) == '\r' || sb.charAt(sb.length() - 1) == '\n')
+                sb.setLength(sb.length() - 1);
+            out.write(sb.toString().getBytes());
+        }
+        try(NumberReader reader = new NumberReader(f)) {
+            int i = 0;
+            while(reader.hasNext()) {
+                long v = reader.next();
+                check(i < rows && v == values[i], "reader row " + i + " = " + v);
+                i++;
+            }
+            check(i == rows, "reader rows " + i + ", expected " + rows);
+        }
+        //letture a intervalli: ogni riga va letta una volta sola, in ordine
+        for(int n = 0; n < 20; n++) {
+            long length = f.length();
+            int parts = 1 + random.nextInt(16);
+            long[] cuts = new long[parts + 1];
+            cuts[parts] = length;
+            for(int p = 1; p < parts; p++)
+                cuts[p] = (long)(random.nextDouble() * length);
+            Arrays.sort(cuts);
+            int i = 0;
+            for(int p = 0; p < parts; p++) {
+                try(NumberReader reader = new NumberReader(f, cuts[p], cuts[p + 1])) {
+                    while(reader.hasNext()) {
+                        long v = reader.next();
+                        check(i < rows && v == values[i], "range reader row " + i + " = " + v);
+                        i++;
+                    }
+                }
+            }
+            check(i == rows, "range reader rows " + i + ", expected " + rows);
+        }
+        f.delete();
+    }
+
+    //i numeri fuori dal range di long vanno rifiutati come fa Long.valueOf, non troncati
+    private static void checkLimits() throws IOException {
+        String[] valid = {"9223372036854775807", "-9223372036854775808", "+42", "-0", "00000000000000000000001"};
+        String[] invalid = {"9223372036854775808", "-9223372036854775809", "99999999999999999999", "18446744073709551616", "+", "-", "1-2"};
+        for(String text : valid) {
+            for(String terminator : new String[]{"\n", ""}) {
+                try {
+                    long v = readOne(text + terminator);
+                    check(v == Long.parseLong(text), "reader " + text + " = " + v);
+                } catch(NumberFormatException e) {
+                    check(false, "reader rejected " + text + ": " + e.getMessage());
+                }
+            }
+        }
+        for(String text : invalid) {
+            try {
+                long v = readOne(text + "\n");
+                check(false, "reader accepted " + text + " as " + v);
+            } catch(NumberFormatException e) {
+                check(true, text);
+            }
+        }
+    }
+
+    private static long readOne(String text) throws IOException {
+        File f = File.createTempFile("digitsCheck", "txt");
+        try {
+            try(OutputStream out = new FileOutputStream(f)) {
+                out.write(text.getBytes());
+            }
+            try(NumberReader reader = new NumberReader(f)) {
+                reader.hasNext();
+                return reader.next();
+            }
+        } finally {
+            f.delete();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import sort.SortedOutputWriter;
+import sort.SparseIndex;
+
+//controlla contains, count e range di SparseIndex contro una ricerca a forza bruta: java test.SparseIndexCheck [seed]
+//valori ripetuti a cavallo dei blocchi, blocchi di poche righe e migliaia di query sullo stesso indice
+//esce con codice 1 se qualche controllo fallisce
+public class SparseIndexCheck {
+    private static int failures;
+    private static int checks;
+
+    static public void main(String args[]) throws IOException {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : System.nanoTime();
+        Random random = new Random(seed);
+        System.out.println("Seed " + seed);
+        //indice a ogni riga, a blocchi di poche righe, e solo a blocchi da 64 KiB
+        int[] indexEvery = {1, 7, 100, Integer.MAX_VALUE};
+        int[] rows = {0, 1, 1000, 20000};
+        for(int every : indexEvery)
+            for(int n : rows)
+                check(random, n, every);
+        System.out.println(checks + " checks, " + failures + " failures");
+        if(failures > 0)
+            System.exit(1);
+    }
+
+    private static void check(boolean ok, String what) {
+        checks++;
+        if(!ok) {
+            failures++;
+            if(failures <= 20)
+                System.err.println("FAIL " + what);
+        }
+    }
+
+    private static void check(Random random, int n, int indexEvery) throws IOException {
+        long[] values = new long[n];
+        int span = 1 + random.nextInt(Math.max(1, n / 4));
+        for(int i = 0; i < n; i++)
+            values[i] = random.nextInt(10) == 0 ? random.nextLong() : random.nextInt(2 * span) - span;
+        Arrays.sort(values);
+        File f = File.createTempFile("sparseIndexCheck", "txt");
+        File idx = new File(f.getPath() + SortedOutputWriter.INDEX_SUFFIX);
+        try {
+            try(SortedOutputWriter out = new SortedOutputWriter(f.getPath(), indexEvery)) {
+                for(long v : values)
+                    out.write(v);
+            }
+            String what = n + " rows, index every " + indexEvery + ": ";
+            try(SparseIndex index = new SparseIndex(f)) {
+                for(int q = 0; q < 2000; q++) {
+                    long from = query(random, values, span);
+                    long to = random.nextInt(20) == 0 ? from - 1 : query(random, values, span);
+                    if(to < from && random.nextBoolean()) {
+                        long t = from;
+                        from = to;
+                        to = t;
+                    }
+                    long[] expected = expected(values, from, to);
+                    check(index.count(from, to) == expected.length, what + "count [" + from + ", " + to + "]");
+                    check(Arrays.equals(index.range(from, to), expected), what + "range [" + from + ", " + to + "]");
+                    boolean found = Arrays.binarySearch(values, from) >= 0;
+                    check(index.contains(from) == found, what + "contains " + from);
+                }
+                check(index.count(Long.MIN_VALUE, Long.MAX_VALUE) == n, what + "count of everything");
+            }
+        } finally {
+            f.delete();
+            idx.delete();
+        }
+    }
+
+    //valori presenti, vicini ai presenti e agli estremi di long
+    private static long query(Random random, long[] values, int span) {
+        switch(random.nextInt(4)) {
+            case 0:
+                return values.length > 0 ? values[random.nextInt(values.length)] : 0;
+            case 1:
+                return random.nextInt(2 * span + 4) - span - 2;
+            case 2:
+                return random.nextBoolean() ? Long.MIN_VALUE : Long.MAX_VALUE;
+            default:
+                return random.nextLong();
+        }
+    }
+
+    private static long[] expected(long[] values, long from, long to) {
+        if(from > to)
+            return new long[0];
+        return Arrays.copyOfRange(values, bound(values, from, false), bound(values, to, true));
+    }
+
+    //primo indice con valore > v (inclusive) o >= v (altrimenti)
+    private static int bound(long[] values, long v, boolean inclusive) {
+        int l = 0;
+        int h = values.length;
+        while(l < h) {
+            int m = (l + h) >>> 1;
+            if(values[m] < v || (inclusive && values[m] == v))
+                l = m + 1;
+            else
+                h = m;
+        }
+        return l;
+    }
+}
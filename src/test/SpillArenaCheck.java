@@ -0,0 +1,76 @@
+package test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import sort.NumberReader;
+import sort.SortedOutputWriter;
+import sort.SpillArena;
+
+//controlla il merge a cascata della SpillArena: java test.SpillArenaCheck [seed]
+//piu' di FAN_IN run (anche vuoti e di un solo valore) fusi e confrontati con Arrays.sort
+//esce con codice 1 se il risultato non e' ordinato o non ha tutti i valori
+public class SpillArenaCheck {
+
+    static public void main(String args[]) throws IOException {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : System.nanoTime();
+        Random random = new Random(seed);
+        System.out.println("Seed " + seed);
+        int failures = 0;
+        //un livello di cascata, due livelli e il caso senza cascata
+        int[] runCounts = {SpillArena.FAN_IN + 1, 3 * SpillArena.FAN_IN + 7, SpillArena.FAN_IN * SpillArena.FAN_IN + 1, 5};
+        for(int runs : runCounts) {
+            if(!check(random, runs)) {
+                System.err.println("FAIL with " + runs + " runs");
+                failures++;
+            }
+        }
+        System.out.println(runCounts.length + " checks, " + failures + " failures");
+        if(failures > 0)
+            System.exit(1);
+    }
+
+    private static boolean check(Random random, int runs) throws IOException {
+        List<Long> all = new ArrayList<>();
+        File out = File.createTempFile("spillArenaCheck", "txt");
+        out.deleteOnExit();
+        long rows;
+        //stima volutamente piccola: l'arena deve crescere
+        try(SpillArena arena = new SpillArena(1024)) {
+            List<SpillArena.Segment> segments = new ArrayList<>();
+            for(int r = 0; r < runs; r++) {
+                int n = random.nextInt(10) == 0 ? random.nextInt(2) : random.nextInt(200);
+                long[] list = new long[n + 3];
+                for(int i = 0; i < n; i++) {
+                    //pochi valori distinti per avere molti uguali tra run diversi
+                    list[i] = random.nextBoolean() ? random.nextLong() : random.nextInt(50) - 25;
+                    all.add(list[i]);
+                }
+                Arrays.sort(list, 0, n);
+                segments.add(arena.write(list, n));
+            }
+            try(SortedOutputWriter writer = new SortedOutputWriter(out.getPath())) {
+                rows = arena.merge(segments, writer);
+            }
+        }
+        long[] expected = new long[all.size()];
+        for(int i = 0; i < expected.length; i++)
+            expected[i] = all.get(i);
+        Arrays.sort(expected);
+        boolean ok = rows == expected.length;
+        try(NumberReader reader = new NumberReader(out)) {
+            int i = 0;
+            while(reader.hasNext()) {
+                long v = reader.next();
+                ok &= i < expected.length && v == expected[i];
+                i++;
+            }
+            ok &= i == expected.length;
+        }
+        out.delete();
+        return ok;
+    }
+}